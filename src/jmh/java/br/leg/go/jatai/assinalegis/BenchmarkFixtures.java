@@ -0,0 +1,240 @@
+package br.leg.go.jatai.assinalegis;
+
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Dados sintéticos dos benchmarks: PDFs de texto ou digitalizados com N páginas e
+ * um certificado PKCS#12 autoassinado gerado na hora.
+ */
+final class BenchmarkFixtures {
+
+    static final String ALIAS = "benchmark";
+    static final char[] SENHA = "benchmark".toCharArray();
+
+    /**
+     * Argumentos das JVMs dos benchmarks: preferências isoladas, para não alterar
+     * a configuração do usuário, e AWT sem interface.
+     */
+    static final String PREFS_NODE = "-Dapp.prefs.node=assinalegis-benchmark";
+    static final String HEADLESS = "-Djava.awt.headless=true";
+
+    private static final String[] LINHAS = {
+            "Art. %d - Fica instituído, no âmbito do Município, o programa de que trata esta Lei,",
+            "com o objetivo de promover a transparência dos atos do Poder Legislativo municipal.",
+            "Parágrafo único. O Poder Executivo regulamentará esta Lei no prazo de noventa dias,",
+            "contados da data de sua publicação, observadas as disposições da Lei Orgânica."
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * PDF A4 só com texto (fonte padrão), com cerca de 50 linhas por página.
+     */
+    static byte[] gerarPdfTexto(int paginas) throws IOException {
+        try (PDDocument doc = new PDDocument()) {
+            PDType1Font fonte = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            int artigo = 1;
+            for (int p = 0; p < paginas; p++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                doc.addPage(page);
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                    cs.beginText();
+                    cs.setFont(fonte, 10);
+                    cs.setLeading(14);
+                    cs.newLineAtOffset(50, 790);
+                    for (int linha = 0; linha < 52; linha++) {
+                        String texto = LINHAS[linha % LINHAS.length];
+                        if (linha % LINHAS.length == 0) {
+                            texto = String.format(texto, artigo++);
+                        }
+                        cs.showText(texto);
+                        cs.newLine();
+                    }
+                    cs.endText();
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            doc.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * PDF A4 em que cada página é uma imagem JPEG colorida de 200 DPI, como sai de
+     * um scanner. Cada página tem o seu próprio objeto de imagem.
+     */
+    static byte[] gerarPdfDigitalizado(int paginas) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        gerarPdfDigitalizado(paginas, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Como {@link #gerarPdfDigitalizado(int)}, gravando no stream e mantendo as
+     * imagens em arquivo temporário durante a geração.
+     */
+    static void gerarPdfDigitalizado(int paginas, OutputStream out) throws IOException {
+        byte[] jpeg = gerarPaginaDigitalizada();
+        try (PDDocument doc = new PDDocument(IOUtils.createTempFileOnlyStreamCache())) {
+            for (int p = 0; p < paginas; p++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                doc.addPage(page);
+                PDImageXObject imagem = JPEGFactory.createFromByteArray(doc, jpeg);
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+                    cs.drawImage(imagem, 0, 0, PDRectangle.A4.getWidth(), PDRectangle.A4.getHeight());
+                }
+            }
+            doc.save(out);
+        }
+    }
+
+    /** Gera os tipos de documento usados nos benchmarks de renderização. */
+    static byte[] gerarPdf(String tipo, int paginas) throws IOException {
+        return switch (tipo) {
+            case "texto" -> gerarPdfTexto(paginas);
+            case "digitalizado" -> gerarPdfDigitalizado(paginas);
+            default -> throw new IllegalArgumentException("Tipo de documento desconhecido: " + tipo);
+        };
+    }
+
+    /**
+     * Documento do tipo indicado como a aplicação o recebe: em memória ou, acima do
+     * limite configurado, num arquivo temporário mapeado. O digitalizado é gerado em
+     * disco, já que com 1000 páginas passa de 700 MB.
+     */
+    static PdfContent gerarConteudo(String tipo, int paginas) throws IOException {
+        if (!"digitalizado".equals(tipo)) {
+            return PdfContent.wrap(gerarPdf(tipo, paginas));
+        }
+        Path arquivo = Files.createTempFile("assinalegis-benchmark-", ".pdf");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(arquivo), 64 * 1024)) {
+                gerarPdfDigitalizado(paginas, out);
+            }
+            try (InputStream in = Files.newInputStream(arquivo)) {
+                return PdfContent.read(in, Files.size(arquivo));
+            }
+        } finally {
+            Files.deleteIfExists(arquivo);
+        }
+    }
+
+    /**
+     * Página A4 a 200 DPI com texto sobre um fundo levemente amarelado e ruído,
+     * para que a compressão JPEG se aproxime da de uma digitalização real.
+     */
+    private static byte[] gerarPaginaDigitalizada() throws IOException {
+        int largura = Math.round(PDRectangle.A4.getWidth() / 72f * 200);
+        int altura = Math.round(PDRectangle.A4.getHeight() / 72f * 200);
+        BufferedImage pagina = new BufferedImage(largura, altura, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = pagina.createGraphics();
+        try {
+            g2d.setColor(new Color(246, 243, 232));
+            g2d.fillRect(0, 0, largura, altura);
+            g2d.setColor(new Color(40, 40, 48));
+            g2d.setFont(new Font(Font.SERIF, Font.PLAIN, 28));
+            int artigo = 1;
+            for (int linha = 0; linha < 52; linha++) {
+                String texto = LINHAS[linha % LINHAS.length];
+                if (linha % LINHAS.length == 0) {
+                    texto = String.format(texto, artigo++);
+                }
+                g2d.drawString(texto, 140, 160 + linha * 40);
+            }
+        } finally {
+            g2d.dispose();
+        }
+
+        Random random = new Random(42);
+        for (int y = 0; y < altura; y++) {
+            for (int x = 0; x < largura; x++) {
+                int ruido = random.nextInt(13) - 6;
+                int rgb = pagina.getRGB(x, y);
+                int r = Math.clamp(((rgb >> 16) & 0xFF) + ruido, 0, 255);
+                int g = Math.clamp(((rgb >> 8) & 0xFF) + ruido, 0, 255);
+                int b = Math.clamp((rgb & 0xFF) + ruido, 0, 255);
+                pagina.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(pagina, "jpg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * KeyStore PKCS#12 com uma chave RSA 2048 e certificado autoassinado no formato
+     * de nome usado pela ICP-Brasil (NOME:CPF).
+     */
+    static KeyStore gerarKeyStore() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+
+        X500Name nome = new X500Name("CN=BENCHMARK DE ASSINATURA:00000000000, O=AssinaLegis");
+        Date inicio = new Date(System.currentTimeMillis() - 60_000);
+        Date fim = new Date(System.currentTimeMillis() + 86_400_000L);
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                nome, BigInteger.valueOf(System.currentTimeMillis()), inicio, fim, nome, keyPair.getPublic());
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(false));
+        builder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.digitalSignature | KeyUsage.nonRepudiation));
+        X509Certificate certificado = new JcaX509CertificateConverter().getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry(ALIAS, keyPair.getPrivate(), SENHA, new Certificate[]{certificado});
+        return keyStore;
+    }
+
+    /**
+     * Desliga carimbo de tempo e LTV (que dependem de rede) e define a aparência,
+     * nas preferências isoladas dos benchmarks.
+     */
+    static void configurarAmbiente(String aparencia) {
+        if (System.getProperty("app.prefs.node") == null) {
+            throw new IllegalStateException("Execute os benchmarks com " + PREFS_NODE);
+        }
+        ConfigService config = ConfigService.getInstance();
+        config.setTsaUrl("");
+        config.setLtvEnabled(false);
+        config.setSignatureAppearance(aparencia);
+    }
+}
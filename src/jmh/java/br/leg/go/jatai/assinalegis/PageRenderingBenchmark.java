@@ -0,0 +1,95 @@
+package br.leg.go.jatai.assinalegis;
+
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.WritableImage;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mede a troca de página do visualizador: a renderização com {@link PDFRenderer}
+ * e a conversão para imagem JavaFX com {@link SwingFXUtils#toFXImage}, separadas e
+ * juntas, por resolução, tipo de imagem e tipo de documento.
+ *
+ * <p>A configuração atual do visualizador é {@link DocumentViewerController#RENDER_DPI}
+ * com {@link DocumentViewerController#RENDER_IMAGE_TYPE}. O perfil {@code benchmark}
+ * executa com {@code -prof gc}, que mostra a alocação por operação.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkFixtures.PREFS_NODE, BenchmarkFixtures.HEADLESS, "-Dprism.order=sw"})
+@State(Scope.Thread)
+public class PageRenderingBenchmark {
+
+    /** Páginas do documento; a renderização percorre todas, como numa sequência de trocas de página. */
+    private static final int PAGINAS = 10;
+
+    @Param({"96", "150", "200", "300"})
+    public float dpi;
+
+    @Param({"RGB", "ARGB", "GRAY"})
+    public ImageType tipoImagem;
+
+    /** "texto" (fontes e vetores) ou "digitalizado" (uma imagem JPEG por página). */
+    @Param({"texto", "digitalizado"})
+    public String documento;
+
+    private PDDocument doc;
+    private PDFRenderer renderer;
+    private BufferedImage renderizada;
+    private int pagina;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        doc = PdfContent.wrap(BenchmarkFixtures.gerarPdf(documento, PAGINAS)).load();
+        renderer = new PDFRenderer(doc);
+        renderizada = renderer.renderImageWithDPI(0, dpi, tipoImagem);
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() throws IOException {
+        doc.close();
+    }
+
+    @Benchmark
+    public BufferedImage renderizar() throws IOException {
+        return renderer.renderImageWithDPI(proximaPagina(), dpi, tipoImagem);
+    }
+
+    @Benchmark
+    public WritableImage converterParaFx() {
+        return SwingFXUtils.toFXImage(renderizada, null);
+    }
+
+    /** O mesmo caminho de {@code DocumentViewerController.renderCurrentPage}. */
+    @Benchmark
+    public WritableImage renderizarEConverter() throws IOException {
+        BufferedImage bim = renderer.renderImageWithDPI(proximaPagina(), dpi, tipoImagem);
+        return SwingFXUtils.toFXImage(bim, null);
+    }
+
+    private int proximaPagina() {
+        int atual = pagina;
+        pagina = (pagina + 1) % PAGINAS;
+        return atual;
+    }
+}
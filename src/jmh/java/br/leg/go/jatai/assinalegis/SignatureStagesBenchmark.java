@@ -0,0 +1,59 @@
+package br.leg.go.jatai.assinalegis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mede as etapas da assinatura que não dependem do tamanho do documento: a
+ * imagem da assinatura visível e a geração do CMS (PKCS#7) sobre o hash.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkFixtures.PREFS_NODE, BenchmarkFixtures.HEADLESS})
+@State(Scope.Benchmark)
+public class SignatureStagesBenchmark {
+
+    /** Tamanho padrão da assinatura visível: 5 cm x 1,5 cm em pontos. */
+    private static final float LARGURA = (float) (5.0 / 2.54 * 72);
+    private static final float ALTURA = (float) (1.5 / 2.54 * 72);
+
+    private AssinaturaService service;
+    private SignerContext context;
+    private byte[] digest;
+
+    @Setup(Level.Trial)
+    public void preparar() throws Exception {
+        BenchmarkFixtures.configurarAmbiente("raster");
+        service = new AssinaturaService();
+        context = SignerContext.create(BenchmarkFixtures.gerarKeyStore(), BenchmarkFixtures.ALIAS, BenchmarkFixtures.SENHA);
+        byte[] conteudo = new byte[64 * 1024];
+        ThreadLocalRandom.current().nextBytes(conteudo);
+        digest = context.digest(new ByteArrayInputStream(conteudo));
+    }
+
+    @Benchmark
+    public BufferedImage criarImagemAssinatura() throws Exception {
+        return service.createSignatureImage(LARGURA, ALTURA, null, context.getNomeAssinante());
+    }
+
+    @Benchmark
+    public byte[] gerarCms() throws Exception {
+        return context.signDigest(digest);
+    }
+}
@@ -0,0 +1,153 @@
+package br.leg.go.jatai.assinalegis;
+
+import br.leg.go.jatai.assinalegis.DocumentViewerController.DocumentItem;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.ExternalSigningSupport;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mede as etapas do fluxo de assinatura que dependem do tamanho do documento:
+ * carga do PDF, montagem da assinatura visível, gravação incremental e o fluxo
+ * completo de {@link AssinaturaService#assinarDocumentos}.
+ *
+ * <p>Executar com {@code mvn -Pbenchmark test-compile exec:exec}.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkFixtures.PREFS_NODE, BenchmarkFixtures.HEADLESS})
+@State(Scope.Benchmark)
+public class SigningPipelineBenchmark {
+
+    @Param({"1", "20", "200", "1000"})
+    public int paginas;
+
+    /**
+     * Tipo de documento: "texto" ou "digitalizado" (uma imagem por página, o caso em
+     * que o arquivo é maior e pesa mais na cópia e no hash).
+     */
+    @Param({"texto", "digitalizado"})
+    public String documento;
+
+    /** Aparência da assinatura visível: "raster" ou "vector". */
+    @Param({"raster"})
+    public String aparencia;
+
+    private PdfContent pdf;
+    private SignerContext context;
+    private AssinaturaService service;
+    private DocumentItem item;
+    private PDDocument pdfCarregado;
+
+    @Setup(Level.Trial)
+    public void preparar() throws Exception {
+        BenchmarkFixtures.configurarAmbiente(aparencia);
+        pdf = BenchmarkFixtures.gerarConteudo(documento, paginas);
+        context = SignerContext.create(BenchmarkFixtures.gerarKeyStore(), BenchmarkFixtures.ALIAS, BenchmarkFixtures.SENHA);
+        service = new AssinaturaService();
+        item = criarItem();
+        // Documento carregado uma única vez, usado só para montar a aparência
+        pdfCarregado = pdf.load();
+    }
+
+    @TearDown(Level.Trial)
+    public void encerrar() throws IOException {
+        pdfCarregado.close();
+        pdf.release();
+    }
+
+    @Benchmark
+    public int carregarPdf() throws IOException {
+        try (PDDocument doc = pdf.load()) {
+            return doc.getNumberOfPages();
+        }
+    }
+
+    @Benchmark
+    public void montarAssinaturaVisivel(Blackhole bh) throws IOException {
+        try (SignatureOptions options = service.criarOpcoesAssinatura(pdfCarregado, item, null, context.getNomeAssinante())) {
+            bh.consume(options.getVisualSignature());
+        }
+    }
+
+    @Benchmark
+    public int salvarIncremental(DocumentoPreparado preparado, Blackhole bh) throws IOException {
+        PdfContent.ContentOutputStream out = new PdfContent.ContentOutputStream(pdf.size() + 64 * 1024);
+        ExternalSigningSupport externalSigning = preparado.doc.saveIncrementalForExternalSigning(out);
+        try (InputStream content = externalSigning.getContent()) {
+            bh.consume(context.digest(content));
+        }
+        externalSigning.setSignature(new byte[0]);
+        // Documentos grandes ficam em arquivo temporário, apagado a cada operação
+        PdfContent salvo = out.toContent();
+        salvo.release();
+        return salvo.size();
+    }
+
+    @Benchmark
+    public List<AssinaturaService.ResultadoAssinatura> fluxoCompleto() throws Exception {
+        DocumentItem novo = criarItem();
+        novo.setOriginalContent(pdf);
+        List<AssinaturaService.ResultadoAssinatura> resultados = service.assinarDocumentos(List.of(novo), context);
+        // Libera o PDF assinado (o original é compartilhado entre as operações)
+        novo.setSignedContent(null);
+        return resultados;
+    }
+
+    private static DocumentItem criarItem() {
+        return new DocumentItem("Benchmark", "", new ObjectMapper().createObjectNode());
+    }
+
+    /**
+     * Documento já carregado e com a assinatura registrada, refeito a cada
+     * invocação porque a gravação incremental só pode ocorrer uma vez.
+     */
+    @State(Scope.Thread)
+    public static class DocumentoPreparado {
+
+        PDDocument doc;
+        SignatureOptions options;
+
+        @Setup(Level.Invocation)
+        public void preparar(SigningPipelineBenchmark benchmark) throws IOException {
+            doc = benchmark.pdf.load();
+            options = benchmark.service.criarOpcoesAssinatura(doc, benchmark.item, null, benchmark.context.getNomeAssinante());
+
+            PDSignature signature = new PDSignature();
+            signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+            signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
+            signature.setName("AssinaLegis");
+            signature.setSignDate(Calendar.getInstance());
+            doc.addSignature(signature, options);
+        }
+
+        @TearDown(Level.Invocation)
+        public void encerrar() throws IOException {
+            options.close();
+            doc.close();
+        }
+    }
+}
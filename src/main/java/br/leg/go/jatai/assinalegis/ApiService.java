@@ -1,6 +1,14 @@
 package br.leg.go.jatai.assinalegis;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
@@ -8,18 +16,53 @@ import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+import okio.Source;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-public class ApiService {
+/**
+ * Acesso à API REST do SAPL.
+ * <p>
+ * Os métodos {@code get}, {@code post}, {@code put}, {@code patch} e
+ * {@code download} bloqueiam a thread até a resposta. As variantes
+ * {@code ...Async} usam o despacho assíncrono do OkHttp e retornam um
+ * {@link CompletableFuture}: cancelar o future cancela a requisição, cada chamada
+ * pode ter um tempo limite próprio e o número de requisições simultâneas é
+ * limitado por {@link ConfigService#getApiMaxRequests()}.
+ * <p>
+ * As respostas de GET passam por um cache HTTP em disco
+ * ({@code ~/.assinalegis/cache/http}, limitado por
+ * {@link ConfigService#getHttpCacheMb()}). Toda resposta guardada é revalidada
+ * com o servidor ({@code If-None-Match}/{@code If-Modified-Since}) antes de ser
+ * usada: se nada mudou, o servidor responde 304 sem corpo e o conteúdo vem do
+ * disco.
+ * <p>
+ * API, PDFs, logotipo, CRL/OCSP e carimbo de tempo usam o mesmo cliente: as
+ * conexões ficam no pool e são reaproveitadas entre chamadas, e com servidores
+ * HTTPS que aceitam HTTP/2 (negociado por ALPN, padrão do OkHttp) as requisições
+ * simultâneas ao mesmo host são multiplexadas numa única conexão.
+ */
+public class ApiService implements ConfigService.ConfigObserver {
+
+    /** Tamanho de cada trecho de um upload repassado à conexão. */
+    private static final int UPLOAD_CHUNK_SIZE = 64 * 1024;
 
     private static ApiService instance;
     private final ConfigService configService;
@@ -29,7 +72,16 @@ public class ApiService {
     private ApiService() {
         this.configService = ConfigService.getInstance();
         this.mapper = new ObjectMapper();
+        Dispatcher dispatcher = new Dispatcher();
+        aplicarLimite(dispatcher, configService.getApiMaxRequests());
         this.client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                // Mantém ociosas tantas conexões quantas podem estar em uso (HTTP/1.1). O pool
+                // não muda depois de criado, por isso usa o maior limite aceito, e não o atual:
+                // o limite pode ser aumentado durante a sessão. Conexões só são abertas sob demanda
+                .connectionPool(new ConnectionPool(ConfigService.MAX_API_MAX_REQUESTS, 5, TimeUnit.MINUTES))
+                .cache(criarCache(configService))
+                .addNetworkInterceptor(ApiService::exigirRevalidacao)
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(30, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
@@ -39,10 +91,64 @@ public class ApiService {
     public static synchronized ApiService getInstance() {
         if (instance == null) {
             instance = new ApiService();
+            instance.configService.addObserver(instance);
         }
         return instance;
     }
 
+    @Override
+    public void onConfigChanged(String key, Object newValue) {
+        if (ConfigService.KEY_API_MAX_REQUESTS.equals(key)) {
+            aplicarLimite(client.dispatcher(), configService.getApiMaxRequests());
+        }
+    }
+
+    /**
+     * Quase todas as chamadas vão para o mesmo servidor, então o limite vale
+     * tanto no total quanto por host.
+     */
+    private static void aplicarLimite(Dispatcher dispatcher, int limite) {
+        dispatcher.setMaxRequests(limite);
+        dispatcher.setMaxRequestsPerHost(limite);
+    }
+
+    private static Cache criarCache(ConfigService configService) {
+        int tamanhoMb = configService.getHttpCacheMb();
+        if (tamanhoMb == 0) {
+            return null;
+        }
+        return new Cache(configService.getCacheDir("http"), tamanhoMb * 1024L * 1024L);
+    }
+
+    /**
+     * Ajusta o cabeçalho {@code Cache-Control} das respostas de GET antes de
+     * chegarem ao cache: com {@code ETag} ou {@code Last-Modified} a resposta é
+     * guardada como {@code no-cache} (sempre revalidada, nunca usada às cegas,
+     * inclusive após troca de token); sem validadores ela não é guardada, pois não
+     * haveria como reaproveitá-la.
+     */
+    private static Response exigirRevalidacao(Interceptor.Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        if (!"GET".equals(chain.request().method()) || response.cacheControl().noStore()) {
+            return response;
+        }
+        boolean validavel = response.code() == 304
+                || response.header("ETag") != null
+                || response.header("Last-Modified") != null;
+        return response.newBuilder()
+                .header("Cache-Control", validavel ? "no-cache" : "no-store")
+                .removeHeader("Expires")
+                .removeHeader("Pragma")
+                .build();
+    }
+
+    /**
+     * Cliente HTTP compartilhado, para que outros serviços reaproveitem o pool de conexões.
+     */
+    public OkHttpClient getHttpClient() {
+        return client;
+    }
+
     public InputStream get(String appLabel, String modelName, Integer id, String action, Map<String, Object> params) throws Exception {
         return request("GET", appLabel, modelName, id, action, null, params);
     }
@@ -59,8 +165,248 @@ public class ApiService {
         return request("PATCH", appLabel, modelName, id, action, form, params);
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Baixa um arquivo por URL absoluta (ex: texto_original de uma proposição),
+     * enviando o token configurado. O chamador deve fechar o stream, o que devolve
+     * a conexão ao pool.
+     */
+    public InputStream download(String url) throws IOException {
+        Response response = client.newCall(buildDownloadRequest(url)).execute();
+        if (!response.isSuccessful()) {
+            response.close();
+            throw new IOException("Erro ao baixar arquivo: HTTP " + response.code() + " - " + url);
+        }
+        return response.body().byteStream();
+    }
+
+    /**
+     * Baixa um PDF por URL absoluta direto para um {@link PdfContent}, em memória
+     * ou em arquivo temporário conforme o tamanho, e fecha a resposta ao final.
+     */
+    public PdfContent downloadContent(String url) throws IOException {
+        try (Response response = client.newCall(buildDownloadRequest(url)).execute()) {
+            return lerConteudo(response, url);
+        }
+    }
+
+    public CompletableFuture<JsonNode> getAsync(String appLabel, String modelName, Integer id, String action, Map<String, Object> params) {
+        return getAsync(appLabel, modelName, id, action, params, null);
+    }
+
+    public CompletableFuture<JsonNode> getAsync(String appLabel, String modelName, Integer id, String action, Map<String, Object> params, Duration timeout) {
+        return requestAsync("GET", appLabel, modelName, id, action, null, params, timeout);
+    }
+
+    public CompletableFuture<JsonNode> postAsync(String appLabel, String modelName, Integer id, String action, Object form, Map<String, Object> params) {
+        return postAsync(appLabel, modelName, id, action, form, params, null);
+    }
+
+    public CompletableFuture<JsonNode> postAsync(String appLabel, String modelName, Integer id, String action, Object form, Map<String, Object> params, Duration timeout) {
+        return requestAsync("POST", appLabel, modelName, id, action, form, params, timeout);
+    }
+
+    public CompletableFuture<JsonNode> putAsync(String appLabel, String modelName, Integer id, String action, Object form, Map<String, Object> params) {
+        return putAsync(appLabel, modelName, id, action, form, params, null);
+    }
+
+    public CompletableFuture<JsonNode> putAsync(String appLabel, String modelName, Integer id, String action, Object form, Map<String, Object> params, Duration timeout) {
+        return requestAsync("PUT", appLabel, modelName, id, action, form, params, timeout);
+    }
+
+    public CompletableFuture<JsonNode> patchAsync(String appLabel, String modelName, Integer id, String action, Object form, Map<String, Object> params) {
+        return patchAsync(appLabel, modelName, id, action, form, params, null);
+    }
+
+    public CompletableFuture<JsonNode> patchAsync(String appLabel, String modelName, Integer id, String action, Object form, Map<String, Object> params, Duration timeout) {
+        return requestAsync("PATCH", appLabel, modelName, id, action, form, params, timeout);
+    }
+
+    /**
+     * Baixa um arquivo por URL absoluta sem bloquear a thread chamadora. O corpo é
+     * lido por inteiro na thread do OkHttp, passando para arquivo temporário acima
+     * do limite de memória de PDFs. Os downloads aguardam na fila do cliente, de
+     * modo que pré-carregar muitos documentos não abre uma conexão para cada um.
+     */
+    public CompletableFuture<PdfContent> downloadAsync(String url) {
+        return downloadAsync(url, null);
+    }
+
+    public CompletableFuture<PdfContent> downloadAsync(String url, Duration timeout) {
+        Request request;
+        try {
+            request = buildDownloadRequest(url);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return enqueue(request, timeout, response -> lerConteudo(response, url));
+    }
+
+    /**
+     * Faz um GET sem bloquear e conclui assim que os cabeçalhos chegam, com o corpo
+     * da resposta ainda por ler (ex: para análise incremental do JSON). O chamador
+     * deve fechar o stream.
+     */
+    public CompletableFuture<InputStream> getStreamAsync(String appLabel, String modelName, Integer id, String action, Map<String, Object> params) {
+        try {
+            return abrirAsync(buildRequest("GET", appLabel, modelName, id, action, null, params));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Como {@link #getStreamAsync(String, String, Integer, String, Map)}, para uma
+     * URL absoluta da API (ex: o link {@code next} de uma lista paginada).
+     */
+    public CompletableFuture<InputStream> getStreamAsync(String url) {
+        try {
+            return abrirAsync(buildDownloadRequest(url));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private CompletableFuture<JsonNode> requestAsync(String method, String appLabel, String modelName, Integer id, String action, Object form, Map<String, Object> params, Duration timeout) {
+        Request request;
+        try {
+            request = buildRequest(method, appLabel, modelName, id, action, form, params);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return enqueue(request, timeout, response -> {
+            verificarResposta(response);
+            ResponseBody body = response.body();
+            if (body == null || body.contentLength() == 0) {
+                return MissingNode.getInstance();
+            }
+            try (InputStream is = body.byteStream()) {
+                JsonNode root = mapper.readTree(is);
+                return root != null ? root : MissingNode.getInstance();
+            }
+        });
+    }
+
+    /**
+     * Enfileira a chamada no dispatcher do OkHttp. A resposta é tratada e fechada
+     * na thread do OkHttp; cancelar o future cancela a chamada.
+     *
+     * @param timeout Tempo limite da chamada inteira (conexão, envio e leitura da
+     *                resposta); null usa apenas os tempos do cliente
+     */
+    private <T> CompletableFuture<T> enqueue(Request request, Duration timeout, TratadorResposta<T> tratador) {
+        Call call = client.newCall(request);
+        if (timeout != null) {
+            call.timeout().timeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.whenComplete((resultado, erro) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    future.complete(tratador.tratar(response));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Enfileira a chamada e entrega o corpo aberto da resposta. Se o future já
+     * tiver sido cancelado quando a resposta chegar, ela é fechada aqui.
+     */
+    private CompletableFuture<InputStream> abrirAsync(Request request) {
+        Call call = client.newCall(request);
+        CompletableFuture<InputStream> future = new CompletableFuture<>();
+        future.whenComplete((resultado, erro) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try {
+                    verificarResposta(response);
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                    return;
+                }
+                if (!future.complete(response.body().byteStream())) {
+                    response.close();
+                }
+            }
+        });
+        return future;
+    }
+
+    @FunctionalInterface
+    private interface TratadorResposta<T> {
+        T tratar(Response response) throws Exception;
+    }
+
     private InputStream request(String method, String appLabel, String modelName, Integer id, String action, Object form, Map<String, Object> params) throws Exception {
+        Response response = client.newCall(buildRequest(method, appLabel, modelName, id, action, form, params)).execute();
+        verificarResposta(response);
+        return response.body().byteStream();
+    }
+
+    /**
+     * Lê o corpo do download para um {@link PdfContent}, já reservando o tamanho
+     * informado no Content-Length.
+     */
+    private static PdfContent lerConteudo(Response response, String url) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new IOException("Erro ao baixar arquivo: HTTP " + response.code() + " - " + url);
+        }
+        ResponseBody body = response.body();
+        try (InputStream is = body.byteStream()) {
+            return PdfContent.read(is, body.contentLength());
+        }
+    }
+
+    private void verificarResposta(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            try (ResponseBody responseBody = response.body()) {
+                String error = responseBody != null ? responseBody.string() : "Unknown error";
+                throw new ApiException(response.code(), error);
+            }
+        }
+    }
+
+    private Request buildDownloadRequest(String url) throws IOException {
+        if (url == null || url.isEmpty() || url.equals("null")) {
+            throw new IOException("URL inválida para download: " + url);
+        }
+        Request.Builder requestBuilder = new Request.Builder().url(url);
+        String token = configService.getToken();
+        if (token != null && !token.isEmpty()) {
+            requestBuilder.header("Authorization", "Token " + token);
+        }
+        return requestBuilder.build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Request buildRequest(String method, String appLabel, String modelName, Integer id, String action, Object form, Map<String, Object> params) throws Exception {
         String baseUrl = configService.getUrl();
         if (baseUrl == null || baseUrl.isEmpty()) {
             throw new IllegalArgumentException("URL_BASE não configurada.");
@@ -127,24 +473,15 @@ public class ApiService {
         }
 
         requestBuilder.method(method, body);
-
-        Response response = client.newCall(requestBuilder.build()).execute();
-
-        if (!response.isSuccessful()) {
-            try (ResponseBody responseBody = response.body()) {
-                String error = responseBody != null ? responseBody.string() : "Unknown error";
-                throw new RuntimeException("API Error: " + response.code() + " - " + error);
-            }
-        }
-
-        return response.body().byteStream();
+        return requestBuilder.build();
     }
 
     private boolean isMultipart(Object form) {
         if (form instanceof Map) {
             Map<?, ?> map = (Map<?, ?>) form;
             for (Object value : map.values()) {
-                if (value instanceof InputStream || value instanceof File || value instanceof byte[] || value instanceof FileData) {
+                if (value instanceof InputStream || value instanceof File || value instanceof byte[]
+                        || value instanceof FileData || value instanceof PdfContent) {
                     return true;
                 }
             }
@@ -171,13 +508,17 @@ public class ApiService {
                 builder.addFormDataPart(key, file.getName(), RequestBody.create(file, MediaType.parse(mimeType)));
             } else if (value instanceof FileData) {
                 FileData fileData = (FileData) value;
-                builder.addFormDataPart(key, fileData.fileName, RequestBody.create(fileData.content, MediaType.parse(fileData.mimeType)));
+                builder.addFormDataPart(key, fileData.fileName, new UploadBody(fileData));
+            } else if (value instanceof PdfContent) {
+                builder.addFormDataPart(key, "blob.pdf", new UploadBody(new FileData("blob.pdf", (PdfContent) value, "application/pdf")));
             } else if (value instanceof byte[]) {
                 builder.addFormDataPart(key, "blob", RequestBody.create((byte[]) value, MediaType.parse("application/octet-stream")));
             } else if (value instanceof InputStream) {
-                try {
-                    byte[] bytes = ((InputStream) value).readAllBytes();
-                    builder.addFormDataPart(key, "blob", RequestBody.create(bytes, MediaType.parse("application/octet-stream")));
+                // Copia o stream uma única vez, para memória ou arquivo temporário conforme o
+                // tamanho, para que o corpo tenha tamanho conhecido e possa ser reenviado
+                try (InputStream in = (InputStream) value) {
+                    PdfContent content = PdfContent.read(in);
+                    builder.addFormDataPart(key, "blob", new UploadBody(new FileData("blob", content, "application/octet-stream")));
                 } catch (IOException e) {
                     throw new RuntimeException("Erro ao ler InputStream para multipart", e);
                 }
@@ -188,15 +529,169 @@ public class ApiService {
         return builder.build();
     }
 
+    /**
+     * Recebe o andamento do envio de um arquivo. Chamado na thread do OkHttp a cada
+     * trecho gravado na conexão; se o corpo for reenviado (ex: nova tentativa após
+     * falha de conexão), a contagem recomeça do zero.
+     */
+    @FunctionalInterface
+    public interface ProgressoEnvio {
+        void atualizar(long enviados, long total);
+    }
+
+    /**
+     * Gera o conteúdo de um arquivo sob demanda, no momento do envio. Deve escrever
+     * exatamente o tamanho informado em {@link FileData} e pode ser chamado mais de
+     * uma vez.
+     */
+    @FunctionalInterface
+    public interface ProdutorConteudo {
+        void escrever(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Resposta de erro da API, com o código HTTP (ex: para decidir se vale tentar de novo).
+     */
+    public static class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        public ApiException(int status, String body) {
+            super("API Error: " + status + " - " + body);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    /**
+     * Arquivo de um formulário multipart. O conteúdo é lido durante o envio, direto
+     * da origem (buffer, arquivo mapeado, arquivo em disco ou produtor), sem cópia
+     * intermediária em {@code byte[]}.
+     */
     public static class FileData {
         public final String fileName;
-        public final byte[] content;
         public final String mimeType;
+        private final long size;
+        private final EscritaConteudo escrita;
+        private volatile ProgressoEnvio progresso;
 
         public FileData(String fileName, byte[] content, String mimeType) {
+            this(fileName, PdfContent.wrap(content), mimeType);
+        }
+
+        public FileData(String fileName, PdfContent content, String mimeType) {
+            this(fileName, mimeType, content.size(), sink -> escreverBuffer(content.asByteBuffer(), sink));
+        }
+
+        /**
+         * Envia o arquivo lendo-o do disco durante o envio.
+         */
+        public FileData(String fileName, Path file, String mimeType) throws IOException {
+            this(fileName, mimeType, Files.size(file), sink -> {
+                try (Source source = Okio.source(file)) {
+                    sink.writeAll(source);
+                }
+            });
+        }
+
+        /**
+         * Envia o conteúdo gerado pelo produtor, com o tamanho informado.
+         */
+        public FileData(String fileName, long size, ProdutorConteudo produtor, String mimeType) {
+            this(fileName, mimeType, size, sink -> {
+                OutputStream out = sink.outputStream();
+                produtor.escrever(out);
+                out.flush();
+            });
+        }
+
+        private FileData(String fileName, String mimeType, long size, EscritaConteudo escrita) {
             this.fileName = fileName;
-            this.content = content;
+            this.size = size;
+            this.escrita = escrita;
             this.mimeType = mimeType;
         }
+
+        public long size() {
+            return size;
+        }
+
+        /**
+         * Define quem recebe o andamento do envio deste arquivo.
+         */
+        public FileData comProgresso(ProgressoEnvio progresso) {
+            this.progresso = progresso;
+            return this;
+        }
+    }
+
+    @FunctionalInterface
+    private interface EscritaConteudo {
+        void escrever(BufferedSink sink) throws IOException;
+    }
+
+    /**
+     * Escreve o buffer em trechos, para que o Okio repasse cada trecho à conexão em
+     * vez de copiar o conteúdo inteiro (ex: um arquivo mapeado) para o heap antes.
+     */
+    private static void escreverBuffer(ByteBuffer buffer, BufferedSink sink) throws IOException {
+        while (buffer.hasRemaining()) {
+            ByteBuffer trecho = buffer.slice(buffer.position(), Math.min(UPLOAD_CHUNK_SIZE, buffer.remaining()));
+            while (trecho.hasRemaining()) {
+                sink.write(trecho);
+            }
+            buffer.position(buffer.position() + trecho.capacity());
+            sink.emit();
+        }
+    }
+
+    /**
+     * Corpo da requisição de um {@link FileData}, com tamanho conhecido e contagem
+     * dos bytes gravados quando houver quem acompanhe o progresso.
+     */
+    private static class UploadBody extends RequestBody {
+        private final FileData fileData;
+        private final MediaType mediaType;
+
+        UploadBody(FileData fileData) {
+            this.fileData = fileData;
+            this.mediaType = MediaType.parse(fileData.mimeType);
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mediaType;
+        }
+
+        @Override
+        public long contentLength() {
+            return fileData.size;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            ProgressoEnvio progresso = fileData.progresso;
+            if (progresso == null) {
+                fileData.escrita.escrever(sink);
+                return;
+            }
+            progresso.atualizar(0, fileData.size);
+            BufferedSink contagem = Okio.buffer(new ForwardingSink(sink) {
+                private long enviados;
+
+                @Override
+                public void write(Buffer source, long byteCount) throws IOException {
+                    super.write(source, byteCount);
+                    enviados += byteCount;
+                    progresso.atualizar(enviados, fileData.size);
+                }
+            });
+            fileData.escrita.escrever(contagem);
+            contagem.emit();
+        }
     }
 }
@@ -5,263 +5,535 @@ import com.fasterxml.jackson.databind.JsonNode;
 
 import javafx.scene.shape.Rectangle;
 import org.apache.pdfbox.Loader;
-import org.apache.pdfbox.io.RandomAccessRead;
-import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.ExternalSigningSupport;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
-import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureInterface;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.SignatureOptions;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.visible.PDVisibleSigProperties;
 import org.apache.pdfbox.pdmodel.interactive.digitalsignature.visible.PDVisibleSignDesigner;
-import org.bouncycastle.cert.jcajce.JcaCertStore;
-import org.bouncycastle.cms.CMSProcessableByteArray;
-import org.bouncycastle.cms.CMSSignedData;
-import org.bouncycastle.cms.CMSSignedDataGenerator;
-import org.bouncycastle.cms.CMSTypedData;
-import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
-import org.bouncycastle.operator.ContentSigner;
-import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
-import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.apache.pdfbox.util.Hex;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.security.KeyStore;
-import java.security.PrivateKey;
-import java.security.cert.Certificate;
-import java.security.cert.X509Certificate;
 import java.text.Normalizer;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 public class AssinaturaService {
 
     /**
      * Assina uma lista de DocumentItems.
+     * <p>
+     * Cada documento é processado em paralelo num pool limitado ao número de
+     * núcleos disponíveis. Uma falha num documento não interrompe o lote: ela
+     * é registrada no {@link ResultadoAssinatura} correspondente.
      *
      * @param itens    Lista de DocumentItems a serem assinados
      * @param keyStore KeyStore contendo o certificado e chave privada
      * @param alias    Alias do certificado no KeyStore
      * @param senha    Senha da chave privada
-     * @throws Exception Em caso de erro na assinatura
+     * @return Resultado de cada documento, na ordem inversa da lista recebida
+     * @throws Exception Em caso de erro ao recuperar a chave ou o certificado
      */
-    public void assinarDocumentos(List<DocumentItem> itens, KeyStore keyStore, String alias, char[] senha) throws Exception {
-
+    public List<ResultadoAssinatura> assinarDocumentos(List<DocumentItem> itens, KeyStore keyStore, String alias, char[] senha) throws Exception {
         // 1. Recupera Chave Privada e Cadeia de Certificados
-        PrivateKey privateKey = (PrivateKey) keyStore.getKey(alias, senha);
-        Certificate[] certificateChain = keyStore.getCertificateChain(alias);
+        return assinarDocumentos(itens, SignerContext.create(keyStore, alias, senha));
+    }
+
+    /**
+     * Assina uma lista de DocumentItems com um contexto de assinatura já criado,
+     * permitindo reutilizá-lo entre lotes da mesma sessão.
+     * <p>
+     * O lote é processado em três etapas:
+     * <ol>
+     *     <li>preparação (em paralelo): insere o campo e a aparência da assinatura,
+     *     grava o PDF com o espaço reservado para o CMS e calcula o hash do intervalo assinado;</li>
+     *     <li>assinatura: gera o CMS de todos os hashes em sequência, numa única
+     *     passagem curta pela chave privada;</li>
+     *     <li>carimbo de tempo (se houver TSA configurada): as requisições de todos os
+     *     documentos são enviadas juntas à TSA;</li>
+     *     <li>finalização (em paralelo): insere cada CMS no espaço reservado,
+     *     acrescenta o DSS com os dados de validação (se habilitado), verifica a
+     *     assinatura gerada e grava o resultado no item.</li>
+     * </ol>
+     * Os dados de revogação da cadeia são obtidos uma única vez por lote, em
+     * paralelo com a preparação.
+     *
+     * @param itens   Lista de DocumentItems a serem assinados
+     * @param context Contexto com a chave privada e a cadeia de certificados
+     * @return Resultado de cada documento, na ordem inversa da lista recebida
+     * @throws Exception Em caso de erro inesperado no lote
+     */
+    public List<ResultadoAssinatura> assinarDocumentos(List<DocumentItem> itens, SignerContext context) throws Exception {
+        JsonNode casa = ConfigService.getInstance().getCasaLegislativa(JsonNode.class);
 
-        if (privateKey == null || certificateChain == null) {
-            throw new Exception("Chave privada ou cadeia de certificados não encontrada para o alias: " + alias);
+        // Inverte a lista para assinar na ordem correta (se necessário)
+        List<DocumentItem> itensInvertidos = new ArrayList<>(itens);
+        java.util.Collections.reverse(itensInvertidos);
+
+        List<ResultadoAssinatura> resultados = new ArrayList<>();
+        if (itensInvertidos.isEmpty()) {
+            return resultados;
+        }
+
+        List<AssinaturaPendente> pendentes = new ArrayList<>();
+        for (DocumentItem item : itensInvertidos) {
+            pendentes.add(new AssinaturaPendente(item));
+        }
+
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), itensInvertidos.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger contador = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "assinatura-" + contador.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        // A cadeia é a mesma para todo o lote: busca OCSP/CRL enquanto os documentos são preparados.
+        // A busca bloqueia na rede, por isso roda numa thread própria e não no pool comum
+        ExecutorService validacao = null;
+        CompletableFuture<RevocationCache.RevocationData> dadosValidacao = null;
+        if (ConfigService.getInstance().isLtvEnabled()) {
+            validacao = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "validacao-ltv");
+                t.setDaemon(true);
+                return t;
+            });
+            dadosValidacao = CompletableFuture.supplyAsync(
+                    () -> RevocationCache.getInstance().get(context.getCertificateChain()), validacao);
         }
 
-        // Extrai o nome do assinante (CN) do certificado
-        String nomeAssinante = "";
         try {
-            X509Certificate x509Cert = (X509Certificate) certificateChain[0];
-            String subjectDN = x509Cert.getSubjectX500Principal().getName();
-            javax.naming.ldap.LdapName ln = new javax.naming.ldap.LdapName(subjectDN);
-            for (javax.naming.ldap.Rdn rdn : ln.getRdns()) {
-                if (rdn.getType().equalsIgnoreCase("CN")) {
-                    nomeAssinante = rdn.getValue().toString();
-                    break;
+            // 1. Prepara todos os documentos
+            executarEtapa(executor, pendentes, pendente -> prepararDocumento(pendente, context, casa));
+
+            // 2. Assina todos os hashes em sequência
+            for (AssinaturaPendente pendente : pendentes) {
+                if (pendente.erro == null) {
+                    executarEtapa(pendente, p -> p.cms = assinarHash(p, context));
                 }
             }
+
+            // 3. Carimba todas as assinaturas de uma vez
+            TimestampClient timestampClient = TimestampClient.getInstance();
+            if (timestampClient.isEnabled()) {
+                carimbarAssinaturas(timestampClient, pendentes);
+            }
+
+            // 4. Finaliza todos os documentos
+            RevocationCache.RevocationData revocationData = dadosValidacao != null ? dadosValidacao.join() : null;
+            executarEtapa(executor, pendentes, pendente -> finalizarDocumento(pendente, revocationData));
+        } finally {
+            executor.shutdownNow();
+            if (validacao != null) {
+                validacao.shutdownNow();
+            }
+            // Se algo escapou das etapas, os PDFs ainda não entregues aos itens são
+            // descartados aqui; antes, espera as tarefas interrompidas para não fechar
+            // um PDF ainda em gravação
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (AssinaturaPendente pendente : pendentes) {
+                pendente.descartarPdf();
+            }
+        }
+
+        for (AssinaturaPendente pendente : pendentes) {
+            resultados.add(new ResultadoAssinatura(pendente.item, pendente.erro, pendente.duracaoNanos));
+        }
+        return resultados;
+    }
+
+    /**
+     * Gera o CMS sobre o hash calculado na preparação do documento.
+     */
+    private byte[] assinarHash(AssinaturaPendente pendente, SignerContext context) throws Exception {
+        PipelineEvents.AssinaturaCms evento = new PipelineEvents.AssinaturaCms();
+        evento.begin();
+        byte[] cms = context.signDigest(pendente.digest);
+        if (evento.shouldCommit()) {
+            evento.documento = PipelineEvents.documentoId(pendente.item);
+            evento.bytes = cms.length;
+            evento.commit();
+        }
+        return cms;
+    }
+
+    /**
+     * Solicita o carimbo de tempo de todas as assinaturas simultaneamente e
+     * aguarda as respostas; o tempo de espera é somado a cada documento.
+     */
+    private void carimbarAssinaturas(TimestampClient timestampClient, List<AssinaturaPendente> pendentes) {
+        long inicio = System.nanoTime();
+        List<AssinaturaPendente> enviados = new ArrayList<>();
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+        for (AssinaturaPendente pendente : pendentes) {
+            if (pendente.erro == null) {
+                enviados.add(pendente);
+                futures.add(timestampClient.timestampSignature(pendente.cms));
+            }
+        }
+
+        for (int i = 0; i < enviados.size(); i++) {
+            AssinaturaPendente pendente = enviados.get(i);
+            try {
+                pendente.cms = futures.get(i).join();
+            } catch (CompletionException e) {
+                Throwable causa = e.getCause() != null ? e.getCause() : e;
+                causa.printStackTrace();
+                pendente.erro = new IOException("Erro ao obter carimbo de tempo: " + causa.getMessage(), causa);
+                pendente.descartarPdf();
+            }
+        }
+
+        long duracao = System.nanoTime() - inicio;
+        for (AssinaturaPendente pendente : enviados) {
+            pendente.duracaoNanos += duracao;
+        }
+    }
+
+    /**
+     * Executa uma etapa em paralelo para os documentos que ainda não falharam.
+     */
+    private void executarEtapa(ExecutorService executor, List<AssinaturaPendente> pendentes, Etapa etapa) throws Exception {
+        List<Future<?>> futures = new ArrayList<>();
+        for (AssinaturaPendente pendente : pendentes) {
+            if (pendente.erro == null) {
+                futures.add(executor.submit(() -> executarEtapa(pendente, etapa)));
+            }
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                // executarEtapa já captura as exceções; só chega aqui em caso de Error
+                throw new Exception("Erro inesperado no lote de assinatura", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Executa uma etapa para um documento, acumulando o tempo gasto e registrando a falha, se houver.
+     */
+    private void executarEtapa(AssinaturaPendente pendente, Etapa etapa) {
+        long inicio = System.nanoTime();
+        try {
+            etapa.executar(pendente);
         } catch (Exception e) {
             e.printStackTrace();
+            pendente.erro = e;
+            pendente.descartarPdf();
+        } finally {
+            pendente.duracaoNanos += System.nanoTime() - inicio;
         }
+    }
 
-        // Inverte a lista para assinar na ordem correta (se necessário)
-        List<DocumentItem> itensInvertidos = new ArrayList<>(itens);
-        java.util.Collections.reverse(itensInvertidos);
+    /**
+     * Prepara um documento: carrega o PDF, monta a aparência, grava o resultado
+     * incremental com o espaço reservado para o CMS e calcula o hash do intervalo assinado.
+     */
+    private void prepararDocumento(AssinaturaPendente pendente, SignerContext context, JsonNode casa) throws Exception {
+        DocumentItem item = pendente.item;
+        String nomeAssinante = context.getNomeAssinante();
+        PdfContent original = item.getOriginalContent();
+        if (original == null) {
+            throw new IOException("PDF do documento ainda não foi carregado.");
+        }
 
-        for (DocumentItem item : itensInvertidos) {
-            byte[] originalBytes = item.getOriginalBytes();
-            if (originalBytes == null) {
-                // Fallback se não tiver bytes originais (ex: carregado via loadPdfPreview sem salvar no item)
-                // Mas idealmente preloadPdf deve garantir isso.
-                // Se não tiver, tentamos usar o PDDocument existente, mas isso pode quebrar assinaturas anteriores.
-                PDDocument doc = item.getPdDocument();
-                if (doc != null) {
-                    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-                        doc.save(baos);
-                        originalBytes = baos.toByteArray();
-                    }
-                } else {
-                    continue;
-                }
+        // O PDF é lido diretamente do buffer compartilhado do item, sem cópia
+        try (PDDocument docToSign = original.load()) {
+            PdfContent.ContentOutputStream baosSigned = new PdfContent.ContentOutputStream(original.size() + 64 * 1024);
+            // Registrado logo de início para que uma falha descarte o arquivo temporário, se houver
+            pendente.pdf = baosSigned;
+
+            // 3. Cria a estrutura da assinatura no PDF
+            PDSignature signature = new PDSignature();
+            signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+            signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
+            signature.setName("AssinaLegis");
+
+            if (casa != null && casa.has("nome")) {
+                signature.setLocation(casa.get("nome").asText());
+            } else {
+                signature.setLocation("Brasil");
             }
 
-            try (PDDocument docToSign = Loader.loadPDF(originalBytes);
-                 ByteArrayOutputStream baosSigned = new ByteArrayOutputStream()) {
+            signature.setReason("Assinatura Digital ICP-Brasil");
+            signature.setSignDate(Calendar.getInstance());
+
+            PipelineEvents.AparenciaAssinatura eventoAparencia = new PipelineEvents.AparenciaAssinatura();
+            eventoAparencia.begin();
+            SignatureOptions signatureOptions = criarOpcoesAssinatura(docToSign, item, casa, nomeAssinante);
+            if (eventoAparencia.shouldCommit()) {
+                eventoAparencia.documento = PipelineEvents.documentoId(item);
+                eventoAparencia.paginas = docToSign.getNumberOfPages();
+                eventoAparencia.aparencia = ConfigService.getInstance().getSignatureAppearance();
+                eventoAparencia.commit();
+            }
 
-                // 3. Cria a estrutura da assinatura no PDF
-                PDSignature signature = new PDSignature();
-                signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
-                signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
-                signature.setName("AssinaLegis");
+            // 4. Registra a assinatura; o trabalho criptográfico é feito na etapa seguinte
+            docToSign.addSignature(signature, signatureOptions);
 
-                JsonNode casa = ConfigService.getInstance().getCasaLegislativa(JsonNode.class);
-                if (casa != null && casa.has("nome")) {
-                    signature.setLocation(casa.get("nome").asText());
-                } else {
-                    signature.setLocation("Brasil");
-                }
+            // 5. Salva o documento (Incremental save é obrigatório para assinaturas)
+            // O hash do intervalo assinado é calculado em fluxo, sem copiar o conteúdo
+            PipelineEvents.GravacaoIncremental eventoGravacao = new PipelineEvents.GravacaoIncremental();
+            eventoGravacao.begin();
+            ExternalSigningSupport externalSigning = docToSign.saveIncrementalForExternalSigning(baosSigned);
+            try (InputStream content = externalSigning.getContent()) {
+                pendente.digest = context.digest(content);
+            }
+
+            // Grava o PDF com o espaço da assinatura preenchido com zeros
+            externalSigning.setSignature(new byte[0]);
+            signatureOptions.close();
+            if (eventoGravacao.shouldCommit()) {
+                eventoGravacao.documento = PipelineEvents.documentoId(item);
+                eventoGravacao.bytes = baosSigned.size();
+                eventoGravacao.paginas = docToSign.getNumberOfPages();
+                eventoGravacao.commit();
+            }
 
-                signature.setReason("Assinatura Digital ICP-Brasil");
-                signature.setSignDate(Calendar.getInstance());
+            pendente.byteRange = signature.getByteRange();
+        }
+    }
 
-                // --- INÍCIO DA CRIAÇÃO DA ASSINATURA VISÍVEL ---
+    /**
+     * Cria as opções da assinatura visível (posição e aparência) para o documento.
+     * O chamador deve fechar as opções depois de gravar o documento.
+     */
+    SignatureOptions criarOpcoesAssinatura(PDDocument doc, DocumentItem item, JsonNode casa, String nomeAssinante) throws IOException {
+        // Determina página e posição (REGRA_A)
+        int pageIndex = 0;
+        if (item.getSavedRect() != null) {
+            pageIndex = item.getSavedPageIndex();
+        }
 
-                // Determina página e posição (REGRA_A)
-                int pageIndex = 0;
-                if (item.getSavedRect() != null) {
-                    pageIndex = item.getSavedPageIndex();
-                }
+        // Validação do índice da página
+        if (pageIndex < 0) pageIndex = 0;
+        if (pageIndex >= doc.getNumberOfPages()) pageIndex = doc.getNumberOfPages() - 1;
+
+        PDPage page = doc.getPage(pageIndex);
+        PDRectangle mediaBox = page.getMediaBox();
+
+        float width = (float) (5.0 / 2.54 * 72); // 5cm em pontos
+        float height = (float) (1.5 / 2.54 * 72); // 1.5cm em pontos
+        float x = 7;
+        float y;
+
+        if (item.getSavedRect() != null) {
+            // REGRA_A_COM_CONTEUDO
+            Rectangle rect = item.getSavedRect();
+
+            // Converte coordenadas do JavaFX (origem top-left) para PDF
+            // Precisamos considerar que o PDFBox usa 72 DPI por padrão e o viewer usa 200 DPI
+            double scaleFactor = 72.0 / 200.0;
+
+            x = (float) (rect.getX() * scaleFactor);
+            width = (float) (rect.getWidth() * scaleFactor);
+            height = (float) (rect.getHeight() * scaleFactor);
+
+            // Ajuste da coordenada Y:
+            // O comportamento observado (y=20 aparecendo no topo) indica que o PDVisibleSignDesigner
+            // nesta versão/configuração está usando origem Top-Left.
+            y = (float) (rect.getY() * scaleFactor);
+        } else {
+            // REGRA_A_SEM_CONTEUDO
+            // Canto inferior esquerdo da página
+            // Se origem é Top-Left: y = mediaBox.getHeight() - 7 - height
+            y = (float) (mediaBox.getHeight() - 7 - height);
+        }
 
-                // Validação do índice da página
-                if (pageIndex < 0) pageIndex = 0;
-                if (pageIndex >= docToSign.getNumberOfPages()) pageIndex = docToSign.getNumberOfPages() - 1;
-
-                PDPage page = docToSign.getPage(pageIndex);
-                PDRectangle mediaBox = page.getMediaBox();
-
-                float width = (float) (5.0 / 2.54 * 72); // 5cm em pontos
-                float height = (float) (1.5 / 2.54 * 72); // 1.5cm em pontos
-                float x = 7;
-                float y;
-
-                if (item.getSavedRect() != null) {
-                    // REGRA_A_COM_CONTEUDO
-                    Rectangle rect = item.getSavedRect();
-
-                    // Converte coordenadas do JavaFX (origem top-left) para PDF
-                    // Precisamos considerar que o PDFBox usa 72 DPI por padrão e o viewer usa 200 DPI
-                    double scaleFactor = 72.0 / 200.0;
-
-                    x = (float) (rect.getX() * scaleFactor);
-                    width = (float) (rect.getWidth() * scaleFactor);
-                    height = (float) (rect.getHeight() * scaleFactor);
-
-                    // Ajuste da coordenada Y:
-                    // O comportamento observado (y=20 aparecendo no topo) indica que o PDVisibleSignDesigner
-                    // nesta versão/configuração está usando origem Top-Left.
-                    y = (float) (rect.getY() * scaleFactor);
-                } else {
-                    // REGRA_A_SEM_CONTEUDO
-                    // Canto inferior esquerdo da página
-                    // Se origem é Top-Left: y = mediaBox.getHeight() - 7 - height
-                    y = (float) (mediaBox.getHeight() - 7 - height);
-                }
+        // Configurações da assinatura visível
+        SignatureOptions signatureOptions = new SignatureOptions();
+
+        if (ConfigService.APPEARANCE_VECTOR.equals(ConfigService.getInstance().getSignatureAppearance())) {
+            // Aparência vetorial: o retângulo é convertido para a origem inferior esquerda do PDF
+            PDRectangle rect = new PDRectangle(mediaBox.getLowerLeftX() + x,
+                    mediaBox.getUpperRightY() - y - height, width, height);
+            signatureOptions.setVisualSignature(new VectorSignatureAppearance()
+                    .createVisualSignatureTemplate(doc, pageIndex, rect, casa, nomeAssinante));
+        } else {
+            // Cria a imagem da assinatura (REGRA_B)
+            BufferedImage image = createSignatureImage(width, height, casa, nomeAssinante);
+
+            signatureOptions.setPage(pageIndex + 1); // PDFBox usa 1-based index para setPage em SignatureOptions? Não, setPage aceita int page number. Vamos verificar.
+            // Na verdade, SignatureOptions não tem setPage direto para int em todas as versões, mas vamos usar o VisibleSignatureProperties.
+            // Vamos usar a abordagem de criar o visual manualmente e associar ao widget.
+
+            // Criação do visual da assinatura
+            // Reutiliza o documento já carregado para não analisar o PDF uma segunda vez
+            try (InputStream imageStream = new ByteArrayInputStream(imageToBytes(image))) {
+
+                PDVisibleSignDesigner visibleSignDesigner = new PDVisibleSignDesigner(doc, imageStream, pageIndex + 1);
+                visibleSignDesigner.xAxis(x)
+                                   .yAxis(y)
+                                   .width(width)
+                                   .height(height)
+                                   .signatureFieldName("signature");
+
+                PDVisibleSigProperties visibleSigProperties = new PDVisibleSigProperties();
+                visibleSigProperties.signerName("Assinador")
+                        .signerLocation("Jataí")
+                        .signatureReason("Assinatura Digital")
+                        .preferredSize(0)
+                        .page(pageIndex + 1)
+                        .visualSignEnabled(true)
+                        .setPdVisibleSignature(visibleSignDesigner)
+                        .buildSignature();
+
+                signatureOptions.setVisualSignature(visibleSigProperties);
+            }
+        }
+        signatureOptions.setPage(pageIndex);
+        if (TimestampClient.getInstance().isEnabled()) {
+            // O token do carimbo de tempo (com os certificados da TSA) também vai em /Contents
+            signatureOptions.setPreferredSignatureSize(SignatureOptions.DEFAULT_SIGNATURE_SIZE * 2);
+        }
+        return signatureOptions;
+    }
 
-                // Cria a imagem da assinatura (REGRA_B)
-                BufferedImage image = createSignatureImage(width, height, casa, nomeAssinante);
-
-                // Configurações da assinatura visível
-                SignatureOptions signatureOptions = new SignatureOptions();
-                signatureOptions.setPage(pageIndex + 1); // PDFBox usa 1-based index para setPage em SignatureOptions? Não, setPage aceita int page number. Vamos verificar.
-                // Na verdade, SignatureOptions não tem setPage direto para int em todas as versões, mas vamos usar o VisibleSignatureProperties.
-                // Vamos usar a abordagem de criar o visual manualmente e associar ao widget.
-
-                // Criação do visual da assinatura
-                try (InputStream docStream = new ByteArrayInputStream(originalBytes);
-                     InputStream imageStream = new ByteArrayInputStream(imageToBytes(image));
-                     RandomAccessRead raf = new RandomAccessReadBuffer(docStream)) {
-
-                    PDVisibleSignDesigner visibleSignDesigner = new PDVisibleSignDesigner(raf, imageStream, pageIndex + 1);
-                    visibleSignDesigner.xAxis(x)
-                                       .yAxis(y)
-                                       .width(width)
-                                       .height(height)
-                                       .signatureFieldName("signature");
-
-                    PDVisibleSigProperties visibleSigProperties = new PDVisibleSigProperties();
-                    visibleSigProperties.signerName("Assinador")
-                            .signerLocation("Jataí")
-                            .signatureReason("Assinatura Digital")
-                            .preferredSize(0)
-                            .page(pageIndex + 1)
-                            .visualSignEnabled(true)
-                            .setPdVisibleSignature(visibleSignDesigner)
-                            .buildSignature();
-
-                    signatureOptions.setVisualSignature(visibleSigProperties);
-                }
-                signatureOptions.setPage(pageIndex);
-
-                // --- FIM DA CRIAÇÃO DA ASSINATURA VISÍVEL ---
-
-                // 4. Registra a interface de assinatura que fará o trabalho criptográfico
-                docToSign.addSignature(signature, new SignatureInterface() {
-                    @Override
-                    public byte[] sign(InputStream content) throws IOException {
-                        try {
-                            // Lê o conteúdo do PDF que precisa ser assinado
-                            byte[] contentBytes = content.readAllBytes();
-
-                            // Prepara a cadeia de certificados para o Bouncy Castle
-                            List<Certificate> certList = new ArrayList<>();
-                            for (Certificate cert : certificateChain) {
-                                certList.add(cert);
-                            }
-                            JcaCertStore certs = new JcaCertStore(certList);
-
-                            // Configura o gerador de assinatura CMS (PKCS#7)
-                            CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
-
-                            // Define o algoritmo de assinatura (SHA256 com RSA é padrão ICP-Brasil)
-                            ContentSigner sha256Signer = new JcaContentSignerBuilder("SHA256withRSA").build(privateKey);
-
-                            gen.addSignerInfoGenerator(new JcaSignerInfoGeneratorBuilder(
-                                    new JcaDigestCalculatorProviderBuilder().build())
-                                    .build(sha256Signer, (X509Certificate) certificateChain[0]));
-
-                            gen.addCertificates(certs);
-
-                            // Gera a assinatura
-                            CMSTypedData msg = new CMSProcessableByteArray(contentBytes);
-                            // false = detached signature (o PDF contém o conteúdo, a assinatura fica separada na estrutura)
-                            CMSSignedData signedData = gen.generate(msg, false);
-
-                            return signedData.getEncoded();
-                        } catch (Exception e) {
-                            throw new IOException("Erro ao gerar assinatura criptográfica", e);
-                        }
-                    }
-                }, signatureOptions);
-
-                // 5. Salva o documento assinado (Incremental save é obrigatório para assinaturas)
-                docToSign.saveIncremental(baosSigned);
-
-                byte[] signedBytes = baosSigned.toByteArray();
-
-                // 6. Carrega o documento assinado e salva no item
-                PDDocument signedDoc = Loader.loadPDF(signedBytes);
-                item.setPdDocumentSigned(signedDoc);
-                item.setSignedBytes(signedBytes);
-
-                //salve também na pasta pessoal do usuário
-                if (ConfigService.getInstance().isDebug()) {
-                    String userHome = System.getProperty("user.home");
-                    String slug = slugify(item.getHeader());
-                    String fileName = slug + "_assinado.pdf";
-                    File outputFile = new File(userHome, fileName);
-                    try (FileOutputStream fos = new FileOutputStream(outputFile)) {
-                        fos.write(signedBytes);
-                    }
-                }
+    /**
+     * Finaliza um documento: insere o CMS no espaço reservado, acrescenta os dados
+     * de validação (se houver), confere o resultado e grava os bytes assinados no item.
+     */
+    private void finalizarDocumento(AssinaturaPendente pendente, RevocationCache.RevocationData revocationData) throws IOException {
+        int[] byteRange = pendente.byteRange;
+
+        // O valor de /Contents fica entre '<' e '>', entre o fim do primeiro e o início do segundo intervalo
+        byte[] hex = Hex.getBytes(pendente.cms);
+        if (hex.length > byteRange[2] - byteRange[1] - 2) {
+            throw new IOException("Espaço reservado insuficiente para a assinatura no PDF");
+        }
+        pendente.pdf.patch(byteRange[1] + 1, hex);
+        PdfContent signed = pendente.pdf.toContent();
+        pendente.pdf = null;
+
+        // Até ser entregue ao item, o conteúdo assinado (e o intermediário) é liberado aqui em caso de erro
+        boolean entregue = false;
+        try {
+            if (revocationData != null) {
+                PdfContent semDadosValidacao = signed;
+                signed = incluirDadosValidacao(semDadosValidacao, revocationData);
+                semDadosValidacao.release();
+            }
+
+            // Confere a assinatura gerada antes de entregá-la
+            List<SignatureVerifier.ResultadoVerificacao> verificacao = SignatureVerifier.getInstance().verify(signed);
+            SignatureVerifier.ResultadoVerificacao ultima = verificacao.isEmpty() ? null : verificacao.get(verificacao.size() - 1);
+            if (ultima == null || !ultima.isIntegra()) {
+                throw new IOException("A assinatura gerada não passou na verificação"
+                        + (ultima != null && ultima.getMensagem() != null ? ": " + ultima.getMensagem() : ""));
+            }
+
+            // 6. Salva os bytes assinados no item; o PDDocument assinado é carregado sob demanda
+            pendente.item.setSignedContent(signed);
+            entregue = true;
+        } finally {
+            if (!entregue) {
+                signed.release();
+            }
+        }
+
+        //salve também na pasta pessoal do usuário
+        if (ConfigService.getInstance().isDebug()) {
+            DocumentItem item = pendente.item;
+            String userHome = System.getProperty("user.home");
+            String slug = slugify(item.getHeader());
+            String fileName = slug + "_assinado.pdf";
+            File outputFile = new File(userHome, fileName);
+            try (FileOutputStream fos = new FileOutputStream(outputFile)) {
+                signed.writeTo(fos);
             }
         }
     }
 
-    private String slugify(String input) {
+    /**
+     * Acrescenta ao PDF assinado, numa nova atualização incremental, o DSS
+     * (Document Security Store) com os certificados e as respostas OCSP/CRL da cadeia.
+     */
+    private PdfContent incluirDadosValidacao(PdfContent signed, RevocationCache.RevocationData dados) throws IOException {
+        PdfContent.ContentOutputStream out = new PdfContent.ContentOutputStream(signed.size() + dados.size() + 4096);
+        try (PDDocument doc = signed.load()) {
+            // O stream de xref da atualização anterior não consta da própria tabela;
+            // /Size garante que os novos objetos não reaproveitem o número dele
+            COSDocument cosDocument = doc.getDocument();
+            long size = cosDocument.getTrailer().getLong(COSName.SIZE);
+            if (size - 1 > cosDocument.getHighestXRefObjectNumber()) {
+                cosDocument.setHighestXRefObjectNumber(size - 1);
+            }
+
+            COSDictionary catalog = doc.getDocumentCatalog().getCOSObject();
+            COSDictionary dss = catalog.getCOSDictionary(COSName.getPDFName("DSS"));
+            if (dss == null) {
+                dss = new COSDictionary();
+                catalog.setItem(COSName.getPDFName("DSS"), dss);
+            }
+
+            adicionarStreams(doc, dss, "Certs", dados.getCertificates());
+            adicionarStreams(doc, dss, "OCSPs", dados.getOcspResponses());
+            adicionarStreams(doc, dss, "CRLs", dados.getCrls());
+
+            dss.setNeedToBeUpdated(true);
+            catalog.setNeedToBeUpdated(true);
+            doc.saveIncremental(out);
+            return out.toContent();
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    private static void adicionarStreams(PDDocument doc, COSDictionary dss, String chave, List<byte[]> conteudos) throws IOException {
+        if (conteudos.isEmpty()) {
+            return;
+        }
+        COSArray array = dss.getCOSArray(COSName.getPDFName(chave));
+        if (array == null) {
+            array = new COSArray();
+            dss.setItem(COSName.getPDFName(chave), array);
+        }
+        for (byte[] conteudo : conteudos) {
+            COSStream stream = doc.getDocument().createCOSStream();
+            try (OutputStream os = stream.createOutputStream()) {
+                os.write(conteudo);
+            }
+            stream.setNeedToBeUpdated(true);
+            array.add(stream);
+        }
+        array.setNeedToBeUpdated(true);
+    }
+
+    static String slugify(String input) {
         if (input == null) {
             return "";
         }
@@ -273,12 +545,52 @@ public class AssinaturaService {
     }
 
 
-    private BufferedImage createSignatureImage(float widthPoints, float heightPoints, JsonNode casa, String nomeAssinante) throws IOException {
+    BufferedImage createSignatureImage(float widthPoints, float heightPoints, JsonNode casa, String nomeAssinante) throws IOException {
         // Converte pontos para pixels (assumindo 300 DPI para boa qualidade)
         int dpi = 300;
         int width = Math.round(widthPoints / 72f * dpi);
         int height = Math.round(heightPoints / 72f * dpi);
 
+        ConfigService configService = ConfigService.getInstance();
+
+        String nomeCasa = "Câmara Municipal";
+        if (casa != null && casa.has("nome")) {
+            nomeCasa = casa.get("nome").asText();
+        }
+        String logoUrl = null;
+        if (casa != null && casa.has("logotipo") && !casa.get("logotipo").isNull() && !casa.get("logotipo").asText().equals("null")) {
+            logoUrl = casa.get("logotipo").asText();
+        }
+
+        SignatureAppearanceCache.Key key = new SignatureAppearanceCache.Key(width, height,
+                configService.getSignatureBgColor(), configService.getSignatureNameColor(),
+                configService.getSignatureDateColor(), nomeCasa, logoUrl, nomeAssinante);
+        SignatureAppearanceCache.Template template =
+                SignatureAppearanceCache.getInstance().get(key, this::renderSignatureTemplate);
+
+        // Copia o modelo estático e desenha apenas a data/hora
+        BufferedImage base = template.getImage();
+        BufferedImage image = new BufferedImage(base.getColorModel(), base.copyData(null), base.isAlphaPremultiplied(), null);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+        String dataHora = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy 'às' HH:mm"));
+        g2d.setColor(template.getDateColor());
+        g2d.setFont(template.getDateFont());
+        g2d.drawString(dataHora, template.getDateX(), template.getDateY());
+
+        g2d.dispose();
+        return image;
+    }
+
+    /**
+     * Desenha a parte estática da assinatura (tudo exceto a data/hora).
+     */
+    private SignatureAppearanceCache.Template renderSignatureTemplate(SignatureAppearanceCache.Key key) {
+        int width = key.width();
+        int height = key.height();
+
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         Graphics2D g2d = image.createGraphics();
 
@@ -287,14 +599,9 @@ public class AssinaturaService {
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
 
-        ConfigService configService = ConfigService.getInstance();
-        String bgColorHex = configService.getSignatureBgColor();
-        Color bgColor = Color.decode(bgColorHex);
-
-        String nameColorHex = configService.getSignatureNameColor();
-        Color nameColor = Color.decode(nameColorHex);
-        String dateColorHex = configService.getSignatureDateColor();
-        Color dateColor = Color.decode(dateColorHex);
+        Color bgColor = Color.decode(key.bgColor());
+        Color nameColor = Color.decode(key.nameColor());
+        Color dateColor = Color.decode(key.dateColor());
 
 
         // Fundo azul (0, 100, 170) com bordas arredondadas
@@ -314,42 +621,19 @@ public class AssinaturaService {
         g2d.setClip(oldClip);
 
         // Ícone alinhado à direita
-        BufferedImage icon = null;
+        // Define a área máxima para o ícone (30% da largura e 85% da altura)
+        double maxIconWidth = width * 0.27; // 27% para deixar uma pequena margem
+        double maxIconHeight = height * 0.85;
 
-        // Tenta carregar do logotipo da casa (URL)
-        if (casa != null && casa.has("logotipo") && !casa.get("logotipo").isNull() && !casa.get("logotipo").asText().equals("null")) {
-            String logoUrl = casa.get("logotipo").asText();
-            if (logoUrl != null && !logoUrl.isEmpty()) {
-                try {
-                    java.net.URL url = java.net.URI.create(logoUrl).toURL();
-                    icon = ImageIO.read(url);
-                } catch (Exception e) {
-                    System.err.println("Erro ao carregar logotipo da URL: " + logoUrl);
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        g2d.setColor(Color.WHITE);
+        // Tenta carregar do logotipo da casa (URL), já reduzido para a área do ícone
+        BufferedImage icon = LogoCache.getInstance().getLogo(key.logoUrl(), (int) maxIconWidth, (int) maxIconHeight);
 
-        String nomeCasa = "Câmara Municipal";
-        if (casa != null && casa.has("nome")) {
-            nomeCasa = casa.get("nome").asText();
-        }
+        String nomeCasa = key.nomeCasa();
         // Calcula tamanho da fonte para não ultrapassar 65% da largura
-        int maxTextWidth = (int) (width * 0.65);
-        int fontSize = height / 3; // Começa com um tamanho razoável
-        Font font = new Font(fontName, Font.BOLD, fontSize);
+        Font font = fitFont(g2d, new Font(fontName, Font.BOLD, height / 3), nomeCasa, (int) (width * 0.65));
         g2d.setColor(nameColor);
         g2d.setFont(font);
         FontMetrics fm = g2d.getFontMetrics();
-
-        while (fm.stringWidth(nomeCasa) > maxTextWidth && fontSize > 5) {
-            fontSize--;
-            font = new Font(fontName, Font.BOLD, fontSize);
-            g2d.setFont(font);
-            fm = g2d.getFontMetrics();
-        }
         // Desenha o nome da casa (Canto Superior Direito da área de texto)
         int xNomeCasa = (int) (width) - fm.stringWidth(nomeCasa) - 10;
         g2d.drawString(nomeCasa, xNomeCasa, fm.getAscent());
@@ -357,36 +641,27 @@ public class AssinaturaService {
 
         g2d.setColor(nameColor);
         // Nome do Assinante (Centralizado na Vertical, Alinhado à Esquerda)
+        String nomeAssinante = key.nomeAssinante();
         if (nomeAssinante == null) nomeAssinante = "";
         if (nomeAssinante.contains(":")) {
             nomeAssinante = nomeAssinante.split(":")[0];
         }
         nomeAssinante = nomeAssinante.toUpperCase();
         // Calcula tamanho da fonte para não ultrapassar 70% da largura
-        maxTextWidth = (int) (width * 0.7);
-        fontSize = height / 3; // Começa com um tamanho razoável
-        font = new Font(fontName, Font.BOLD, fontSize);
+        font = fitFont(g2d, new Font(fontName, Font.BOLD, height / 3), nomeAssinante, (int) (width * 0.7));
+        int fontSize = font.getSize();
         g2d.setFont(font);
         fm = g2d.getFontMetrics();
-        while (fm.stringWidth(nomeAssinante) > maxTextWidth && fontSize > 5) {
-            fontSize--;
-            font = new Font(fontName, Font.BOLD, fontSize);
-            g2d.setFont(font);
-            fm = g2d.getFontMetrics();
-        }
         // Centralizado na vertical
         int yText = (int)(height / 2 - fm.getHeight()*1.3) + fm.getAscent();
         g2d.drawString(nomeAssinante, 10, yText);
 
 
-        String dataHora = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy 'às' HH:mm"));
+        // A data/hora é desenhada por documento; aqui só se calcula a posição
         int dateFontSize = (int) (fontSize * 0.9);
         Font dateFont = new Font(fontName, Font.BOLD, dateFontSize);
-        g2d.setColor(dateColor);
-        g2d.setFont(dateFont);
-        FontMetrics dateFm = g2d.getFontMetrics();
-        yText = (int)(height + dateFm.getHeight()) / 2;
-        g2d.drawString(dataHora, 40, yText);
+        FontMetrics dateFm = g2d.getFontMetrics(dateFont);
+        int yDate = (int)(height + dateFm.getHeight()) / 2;
 
 
         g2d.setColor(dateColor);
@@ -399,30 +674,18 @@ public class AssinaturaService {
 
 
         g2d.setColor(nameColor);
-        font = new Font(fontName, Font.BOLD, 20);
         g2d.setFont(font);
-        fm = g2d.getFontMetrics();
         data = "Validação disponível em: https://validar.iti.gov.br";
-        hfm = fm.getHeight();
         g2d.drawString(data, 20, (int)(height-hfm/2.4));
 
 
         // Fallback para o ícone padrão se não conseguiu carregar o logotipo
+        boolean logoIndisponivel = icon == null && key.logoUrl() != null && !key.logoUrl().isEmpty();
         if (icon == null) {
-            try (InputStream is = App.class.getResourceAsStream("/icon.png")) {
-                if (is != null) {
-                    icon = ImageIO.read(is);
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+            icon = LogoCache.getInstance().getDefaultLogo((int) maxIconWidth, (int) maxIconHeight);
         }
 
         if (icon != null) {
-            // Define a área máxima para o ícone (30% da largura e 85% da altura)
-            double maxIconWidth = width * 0.27; // 27% para deixar uma pequena margem
-            double maxIconHeight = height * 0.85;
-
             double scaleWidth = maxIconWidth / icon.getWidth();
             double scaleHeight = maxIconHeight / icon.getHeight();
 
@@ -444,7 +707,29 @@ public class AssinaturaService {
         }
 
         g2d.dispose();
-        return image;
+        return new SignatureAppearanceCache.Template(image, dateFont, dateColor, 40, yDate, logoIndisponivel);
+    }
+
+    /**
+     * Reduz a fonte até que o texto caiba em maxWidth (mínimo de 5pt).
+     * O tamanho é estimado proporcionalmente e depois ajustado, evitando
+     * medir o texto a cada ponto.
+     */
+    private Font fitFont(Graphics2D g2d, Font font, String text, int maxWidth) {
+        int startSize = font.getSize();
+        int textWidth = g2d.getFontMetrics(font).stringWidth(text);
+        if (textWidth <= maxWidth || startSize <= 5) {
+            return font;
+        }
+
+        int size = Math.max(5, (int) ((long) startSize * maxWidth / textWidth));
+        while (size > 5 && g2d.getFontMetrics(font.deriveFont((float) size)).stringWidth(text) > maxWidth) {
+            size--;
+        }
+        while (size + 1 < startSize && g2d.getFontMetrics(font.deriveFont((float) (size + 1))).stringWidth(text) <= maxWidth) {
+            size++;
+        }
+        return font.deriveFont((float) size);
     }
 
     private void drawRotatedGradient(Graphics2D g2d, java.awt.Rectangle rect, double rotationDegrees, int maxAlpha) {
@@ -506,4 +791,59 @@ public class AssinaturaService {
         ImageIO.write(image, "png", baos);
         return baos.toByteArray();
     }
+
+    /**
+     * Uma etapa do lote aplicada a um documento.
+     */
+    @FunctionalInterface
+    private interface Etapa {
+        void executar(AssinaturaPendente pendente) throws Exception;
+    }
+
+    /**
+     * Estado de um documento entre as etapas do lote.
+     */
+    private static class AssinaturaPendente {
+        private final DocumentItem item;
+        private PdfContent.ContentOutputStream pdf;
+        private int[] byteRange;
+        private byte[] digest;
+        private byte[] cms;
+        private Exception erro;
+        private long duracaoNanos;
+
+        private AssinaturaPendente(DocumentItem item) {
+            this.item = item;
+        }
+
+        /**
+         * Libera o PDF em preparação, apagando o arquivo temporário, se houver.
+         */
+        private synchronized void descartarPdf() {
+            if (pdf != null) {
+                pdf.close();
+                pdf = null;
+            }
+        }
+    }
+
+    /**
+     * Resultado da assinatura de um documento do lote.
+     */
+    public static class ResultadoAssinatura {
+        private final DocumentItem item;
+        private final Exception erro;
+        private final long duracaoNanos;
+
+        public ResultadoAssinatura(DocumentItem item, Exception erro, long duracaoNanos) {
+            this.item = item;
+            this.erro = erro;
+            this.duracaoNanos = duracaoNanos;
+        }
+
+        public DocumentItem getItem() { return item; }
+        public Exception getErro() { return erro; }
+        public boolean isSucesso() { return erro == null; }
+        public long getDuracaoMillis() { return duracaoNanos / 1_000_000; }
+    }
 }
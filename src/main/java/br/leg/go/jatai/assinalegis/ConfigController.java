@@ -1,6 +1,8 @@
 package br.leg.go.jatai.assinalegis;
 
 import javafx.fxml.FXML;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.ColorPicker;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.TextField;
@@ -33,6 +35,33 @@ public class ConfigController {
     @FXML
     private ColorPicker signatureDateColorPicker;
 
+    @FXML
+    private ChoiceBox<String> appearanceChoice;
+
+    @FXML
+    private TextField tsaUrlField;
+
+    @FXML
+    private CheckBox ltvCheckBox;
+
+    @FXML
+    private TextField pdfMemoryLimitField;
+
+    @FXML
+    private TextField credentialIdleField;
+
+    @FXML
+    private TextField apiMaxRequestsField;
+
+    @FXML
+    private TextField httpCacheField;
+
+    @FXML
+    private TextField uploadConcurrencyField;
+
+    private static final String APPEARANCE_RASTER_LABEL = "Imagem (PNG 300 DPI)";
+    private static final String APPEARANCE_VECTOR_LABEL = "Vetorial (PDF menor)";
+
     private ConfigService configService;
     private Stage dialogStage;
 
@@ -53,6 +82,16 @@ public class ConfigController {
         bgColorPicker.setValue(Color.web(configService.getSignatureBgColor()));
         signatureNameColorPicker.setValue(Color.web(configService.getSignatureNameColor()));
         signatureDateColorPicker.setValue(Color.web(configService.getSignatureDateColor()));
+        appearanceChoice.getItems().setAll(APPEARANCE_RASTER_LABEL, APPEARANCE_VECTOR_LABEL);
+        appearanceChoice.setValue(ConfigService.APPEARANCE_VECTOR.equals(configService.getSignatureAppearance())
+                ? APPEARANCE_VECTOR_LABEL : APPEARANCE_RASTER_LABEL);
+        tsaUrlField.setText(configService.getTsaUrl());
+        ltvCheckBox.setSelected(configService.isLtvEnabled());
+        pdfMemoryLimitField.setText(String.valueOf(configService.getPdfMemoryLimitMb()));
+        credentialIdleField.setText(String.valueOf(configService.getCredentialIdleMinutes()));
+        apiMaxRequestsField.setText(String.valueOf(configService.getApiMaxRequests()));
+        httpCacheField.setText(String.valueOf(configService.getHttpCacheMb()));
+        uploadConcurrencyField.setText(String.valueOf(configService.getUploadConcurrency()));
     }
 
     public void setDialogStage(Stage dialogStage) {
@@ -89,6 +128,35 @@ public class ConfigController {
         configService.setSignatureBgColor(toHexString(bgColorPicker.getValue()));
         configService.setSignatureNameColor(toHexString(signatureNameColorPicker.getValue()));
         configService.setSignatureDateColor(toHexString(signatureDateColorPicker.getValue()));
+        configService.setSignatureAppearance(APPEARANCE_VECTOR_LABEL.equals(appearanceChoice.getValue())
+                ? ConfigService.APPEARANCE_VECTOR : ConfigService.APPEARANCE_RASTER);
+        configService.setTsaUrl(tsaUrlField.getText());
+        configService.setLtvEnabled(ltvCheckBox.isSelected());
+        try {
+            configService.setPdfMemoryLimitMb(Integer.parseInt(pdfMemoryLimitField.getText().trim()));
+        } catch (NumberFormatException e) {
+            // Valor inválido: mantém o limite atual
+        }
+        try {
+            configService.setCredentialIdleMinutes(Integer.parseInt(credentialIdleField.getText().trim()));
+        } catch (NumberFormatException e) {
+            // Valor inválido: mantém o tempo atual
+        }
+        try {
+            configService.setApiMaxRequests(Integer.parseInt(apiMaxRequestsField.getText().trim()));
+        } catch (NumberFormatException e) {
+            // Valor inválido: mantém o limite atual
+        }
+        try {
+            configService.setHttpCacheMb(Integer.parseInt(httpCacheField.getText().trim()));
+        } catch (NumberFormatException e) {
+            // Valor inválido: mantém o tamanho atual
+        }
+        try {
+            configService.setUploadConcurrency(Integer.parseInt(uploadConcurrencyField.getText().trim()));
+        } catch (NumberFormatException e) {
+            // Valor inválido: mantém o limite atual
+        }
 
         dialogStage.close();
     }
@@ -3,10 +3,13 @@ package br.leg.go.jatai.assinalegis;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
 import java.io.InputStream;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.prefs.Preferences;
 
 public class ConfigService {
@@ -17,21 +20,61 @@ public class ConfigService {
 
     private static final String KEY_URL = "url";
     public static final String KEY_TOKEN = "token";
-    private static final String KEY_CERT_PATH = "cert_path";
-    private static final String KEY_CERT_PASSWORD = "cert_password";
+    public static final String KEY_CERT_PATH = "cert_path";
+    public static final String KEY_CERT_PASSWORD = "cert_password";
     public static final String KEY_CASA = "casalegislativa";
-    private static final String KEY_SIGNATURE_BG_COLOR = "signature_bg_color";
-    private static final String KEY_SIGNATURE_NAME_COLOR = "signature_name_color";
-    private static final String KEY_SIGNATURE_DATE_COLOR = "signature_date_color";
+    public static final String KEY_SIGNATURE_BG_COLOR = "signature_bg_color";
+    public static final String KEY_SIGNATURE_NAME_COLOR = "signature_name_color";
+    public static final String KEY_SIGNATURE_DATE_COLOR = "signature_date_color";
+    public static final String KEY_SIGNATURE_APPEARANCE = "signature_appearance";
+    public static final String KEY_TSA_URL = "tsa_url";
+    public static final String KEY_LTV_ENABLED = "ltv_enabled";
+    public static final String KEY_PDF_MEMORY_LIMIT_MB = "pdf_memory_limit_mb";
+    public static final String KEY_CREDENTIAL_IDLE_MINUTES = "credential_idle_minutes";
+    public static final String KEY_API_MAX_REQUESTS = "api_max_requests";
+    public static final String KEY_HTTP_CACHE_MB = "http_cache_mb";
+    public static final String KEY_UPLOAD_CONCURRENCY = "upload_concurrency";
+
+    /** Limite padrão, em MB, para manter um PDF em memória. */
+    public static final int DEFAULT_PDF_MEMORY_LIMIT_MB = 32;
+
+    /** Tempo padrão, em minutos sem uso, que o certificado fica desbloqueado. */
+    public static final int DEFAULT_CREDENTIAL_IDLE_MINUTES = 15;
+
+    /** Número padrão de requisições simultâneas à API. */
+    public static final int DEFAULT_API_MAX_REQUESTS = 8;
+
+    /** Limite superior aceito para as requisições simultâneas à API. */
+    public static final int MAX_API_MAX_REQUESTS = 32;
+
+    /** Tamanho padrão, em MB, do cache HTTP em disco. */
+    public static final int DEFAULT_HTTP_CACHE_MB = 100;
+
+    /** Número padrão de documentos enviados ao mesmo tempo. */
+    public static final int DEFAULT_UPLOAD_CONCURRENCY = 4;
+
+    /** Aparência da assinatura visível rasterizada (PNG a 300 DPI). */
+    public static final String APPEARANCE_RASTER = "raster";
+    /** Aparência da assinatura visível vetorial (Form XObject). */
+    public static final String APPEARANCE_VECTOR = "vector";
 
     private static ConfigService instance;
     private final Preferences prefs;
     private final ObjectMapper mapper;
-    private final List<ConfigObserver> observers = new ArrayList<>();
+    private final List<ConfigObserver> observers = new CopyOnWriteArrayList<>();
+    /**
+     * Valores válidos só nesta execução (ex: --url e --token da linha de comando).
+     * Prevalecem sobre as preferências e nunca são gravados.
+     */
+    private final Map<String, String> sessao = new ConcurrentHashMap<>();
     private boolean debugMode;
 
     private ConfigService() {
-        this.prefs = Preferences.userNodeForPackage(App.class);
+        // Nó alternativo de preferências (ex: benchmarks), para não alterar a configuração do usuário
+        String prefsNode = System.getProperty("app.prefs.node");
+        this.prefs = prefsNode != null && !prefsNode.isBlank()
+                ? Preferences.userRoot().node(prefsNode)
+                : Preferences.userNodeForPackage(App.class);
         this.mapper = new ObjectMapper();
 
         loadDebugMode();
@@ -85,7 +128,23 @@ public class ConfigService {
     }
 
     public String getUrl() {
-        return prefs.get(KEY_URL, "");
+        String url = sessao.get(KEY_URL);
+        return url != null ? url : prefs.get(KEY_URL, "");
+    }
+
+    /**
+     * Usa a URL e o token informados apenas nesta execução, sem gravá-los nas
+     * preferências. Valores nulos mantêm os configurados. Enquanto houver valores
+     * de sessão, os dados da Casa Legislativa obtidos também ficam só em memória.
+     */
+    public void setConexaoSessao(String url, String token) {
+        if (url != null) {
+            sessao.put(KEY_URL, url);
+        }
+        if (token != null) {
+            sessao.put(KEY_TOKEN, token);
+            notifyObservers(KEY_TOKEN, token);
+        }
     }
 
     public void setUrl(String url) {
@@ -100,22 +159,32 @@ public class ConfigService {
     private void updateCasaLegislativa() {
         new Thread(() -> {
             try {
-                InputStream response = ApiService.getInstance().get("base", "casalegislativa", null, null, null);
-                JsonNode root = mapper.readTree(response);
-                if (root.has("results") && root.get("results").isArray()) {
-                    JsonNode results = root.get("results");
-                    if (results.size() > 0) {
-                        setCasaLegislativa(results.get(0));
-                    }
-                }
+                refreshCasaLegislativa();
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }).start();
     }
 
+    /**
+     * Busca na API os dados da Casa Legislativa e os grava na configuração,
+     * aguardando a resposta (o modo sem interface precisa deles antes de assinar).
+     */
+    public void refreshCasaLegislativa() throws Exception {
+        try (InputStream response = ApiService.getInstance().get("base", "casalegislativa", null, null, null)) {
+            JsonNode root = mapper.readTree(response);
+            if (root.has("results") && root.get("results").isArray()) {
+                JsonNode results = root.get("results");
+                if (results.size() > 0) {
+                    setCasaLegislativa(results.get(0));
+                }
+            }
+        }
+    }
+
     public String getToken() {
-        return prefs.get(KEY_TOKEN, "");
+        String token = sessao.get(KEY_TOKEN);
+        return token != null ? token : prefs.get(KEY_TOKEN, "");
     }
 
     public void setToken(String token) {
@@ -129,7 +198,12 @@ public class ConfigService {
     }
 
     public void setCertPath(String certPath) {
+        certPath = certPath != null ? certPath : "";
+        if (certPath.equals(getCertPath())) {
+            return;
+        }
         prefs.put(KEY_CERT_PATH, certPath);
+        notifyObservers(KEY_CERT_PATH, certPath);
     }
 
     public String getCertPassword() {
@@ -137,7 +211,13 @@ public class ConfigService {
     }
 
     public void setCertPassword(String password) {
-        prefs.put(KEY_CERT_PASSWORD, password != null ? password : "");
+        password = password != null ? password : "";
+        if (password.equals(getCertPassword())) {
+            return;
+        }
+        prefs.put(KEY_CERT_PASSWORD, password);
+        // A senha não é repassada aos observadores
+        notifyObservers(KEY_CERT_PASSWORD, null);
     }
 
     public String getSignatureBgColor() {
@@ -146,18 +226,35 @@ public class ConfigService {
 
     public void setSignatureBgColor(String color) {
         prefs.put(KEY_SIGNATURE_BG_COLOR, color);
+        notifyObservers(KEY_SIGNATURE_BG_COLOR, color);
     }
 
     public boolean isDebug() {
         return debugMode;
     }
 
+    /**
+     * Diretório de cache local do aplicativo ({@code ~/.assinalegis/cache/<subdir>}).
+     * O diretório é criado se ainda não existir.
+     */
+    public File getCacheDir(String subdir) {
+        File dir = new File(new File(System.getProperty("user.home"), ".assinalegis"), "cache");
+        if (subdir != null && !subdir.isEmpty()) {
+            dir = new File(dir, subdir);
+        }
+        if (!dir.exists() && !dir.mkdirs()) {
+            System.err.println("Não foi possível criar o diretório de cache: " + dir);
+        }
+        return dir;
+    }
+
     public String getSignatureNameColor() {
         return prefs.get(KEY_SIGNATURE_NAME_COLOR, "#ffffff");
     }
 
     public void setSignatureNameColor(String color) {
         prefs.put(KEY_SIGNATURE_NAME_COLOR, color);
+        notifyObservers(KEY_SIGNATURE_NAME_COLOR, color);
     }
 
     public String getSignatureDateColor() {
@@ -166,10 +263,121 @@ public class ConfigService {
 
     public void setSignatureDateColor(String color) {
         prefs.put(KEY_SIGNATURE_DATE_COLOR, color);
+        notifyObservers(KEY_SIGNATURE_DATE_COLOR, color);
+    }
+
+    public String getSignatureAppearance() {
+        return prefs.get(KEY_SIGNATURE_APPEARANCE, APPEARANCE_RASTER);
+    }
+
+    public void setSignatureAppearance(String appearance) {
+        prefs.put(KEY_SIGNATURE_APPEARANCE, appearance != null ? appearance : APPEARANCE_RASTER);
+        notifyObservers(KEY_SIGNATURE_APPEARANCE, appearance);
+    }
+
+    /**
+     * URL da Autoridade de Carimbo de Tempo (RFC 3161). Vazia desativa o carimbo.
+     */
+    public String getTsaUrl() {
+        return prefs.get(KEY_TSA_URL, "");
+    }
+
+    public void setTsaUrl(String tsaUrl) {
+        String value = tsaUrl != null ? tsaUrl.trim() : "";
+        prefs.put(KEY_TSA_URL, value);
+        notifyObservers(KEY_TSA_URL, value);
+    }
+
+    /**
+     * Indica se os dados de validação de longo prazo (certificados, OCSP e CRL)
+     * devem ser incluídos no DSS dos documentos assinados.
+     */
+    public boolean isLtvEnabled() {
+        return prefs.getBoolean(KEY_LTV_ENABLED, false);
+    }
+
+    public void setLtvEnabled(boolean enabled) {
+        prefs.putBoolean(KEY_LTV_ENABLED, enabled);
+        notifyObservers(KEY_LTV_ENABLED, enabled);
+    }
+
+    /**
+     * Tamanho máximo, em MB, de um PDF mantido em memória. Documentos maiores são
+     * gravados num arquivo temporário e mapeados; zero envia todos para o disco.
+     */
+    public int getPdfMemoryLimitMb() {
+        return Math.max(0, prefs.getInt(KEY_PDF_MEMORY_LIMIT_MB, DEFAULT_PDF_MEMORY_LIMIT_MB));
+    }
+
+    public long getPdfMemoryLimitBytes() {
+        return getPdfMemoryLimitMb() * 1024L * 1024L;
+    }
+
+    public void setPdfMemoryLimitMb(int limitMb) {
+        int value = Math.max(0, limitMb);
+        prefs.putInt(KEY_PDF_MEMORY_LIMIT_MB, value);
+        notifyObservers(KEY_PDF_MEMORY_LIMIT_MB, value);
+    }
+
+    /**
+     * Minutos sem uso após os quais o certificado desbloqueado é descartado da
+     * memória; zero desbloqueia o certificado a cada assinatura.
+     */
+    public int getCredentialIdleMinutes() {
+        return Math.max(0, prefs.getInt(KEY_CREDENTIAL_IDLE_MINUTES, DEFAULT_CREDENTIAL_IDLE_MINUTES));
+    }
+
+    public void setCredentialIdleMinutes(int minutes) {
+        int value = Math.max(0, minutes);
+        prefs.putInt(KEY_CREDENTIAL_IDLE_MINUTES, value);
+        notifyObservers(KEY_CREDENTIAL_IDLE_MINUTES, value);
+    }
+
+    /**
+     * Número máximo de requisições assíncronas simultâneas à API; as demais
+     * aguardam na fila do cliente HTTP.
+     */
+    public int getApiMaxRequests() {
+        int value = prefs.getInt(KEY_API_MAX_REQUESTS, DEFAULT_API_MAX_REQUESTS);
+        return Math.min(MAX_API_MAX_REQUESTS, Math.max(1, value));
+    }
+
+    public void setApiMaxRequests(int maxRequests) {
+        int value = Math.min(MAX_API_MAX_REQUESTS, Math.max(1, maxRequests));
+        prefs.putInt(KEY_API_MAX_REQUESTS, value);
+        notifyObservers(KEY_API_MAX_REQUESTS, value);
+    }
+
+    /**
+     * Tamanho máximo, em MB, do cache HTTP em disco (lista de proposições e PDFs);
+     * zero desativa o cache. Vale a partir da próxima execução.
+     */
+    public int getHttpCacheMb() {
+        return Math.max(0, prefs.getInt(KEY_HTTP_CACHE_MB, DEFAULT_HTTP_CACHE_MB));
+    }
+
+    public void setHttpCacheMb(int cacheMb) {
+        int value = Math.max(0, cacheMb);
+        prefs.putInt(KEY_HTTP_CACHE_MB, value);
+        notifyObservers(KEY_HTTP_CACHE_MB, value);
+    }
+
+    /**
+     * Número de documentos assinados enviados ao mesmo tempo. Também vale o limite
+     * geral de {@link #getApiMaxRequests()}.
+     */
+    public int getUploadConcurrency() {
+        return Math.max(1, prefs.getInt(KEY_UPLOAD_CONCURRENCY, DEFAULT_UPLOAD_CONCURRENCY));
+    }
+
+    public void setUploadConcurrency(int concurrency) {
+        int value = Math.max(1, concurrency);
+        prefs.putInt(KEY_UPLOAD_CONCURRENCY, value);
+        notifyObservers(KEY_UPLOAD_CONCURRENCY, value);
     }
 
     public <T> T getCasaLegislativa(Class<T> type) {
-        String json = prefs.get(KEY_CASA, null);
+        String json = sessao.containsKey(KEY_CASA) ? sessao.get(KEY_CASA) : prefs.get(KEY_CASA, null);
         if (json == null || json.isEmpty()) {
             return null;
         }
@@ -183,7 +391,11 @@ public class ConfigService {
     public void setCasaLegislativa(Object casa) {
         try {
             String json = mapper.writeValueAsString(casa);
-            prefs.put(KEY_CASA, json);
+            if (sessao.isEmpty()) {
+                prefs.put(KEY_CASA, json);
+            } else {
+                sessao.put(KEY_CASA, json);
+            }
             notifyObservers(KEY_CASA, casa);
         } catch (JsonProcessingException e) {
             throw new RuntimeException("Erro ao salvar configuração da Casa Legislativa", e);
@@ -0,0 +1,244 @@
+package br.leg.go.jatai.assinalegis;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Mantém o certificado A1 desbloqueado durante a sessão.
+ * <p>
+ * Abrir um PKCS#12 exige derivar a chave da senha (PBKDF com muitas iterações), o
+ * que leva de centenas de milissegundos a alguns segundos. O cache guarda o
+ * {@link SignerContext} (chave privada e cadeia) do último certificado aberto e o
+ * descarta depois de {@link ConfigService#getCredentialIdleMinutes()} minutos sem
+ * uso, ou quando o caminho, a senha ou o próprio arquivo do certificado mudam.
+ * <p>
+ * Cada uso é uma {@link Credencial} que deve ser fechada ao final; o tempo sem uso
+ * só começa a contar quando não há nenhuma aberta, de modo que um lote longo não
+ * perde a chave no meio da assinatura.
+ */
+public class CredentialCache implements ConfigService.ConfigObserver {
+
+    private static CredentialCache instance;
+
+    private final ScheduledThreadPoolExecutor timer;
+    private Entrada atual;
+    private volatile Consumer<String> log = mensagem -> { };
+
+    private CredentialCache() {
+        timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "credenciais");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    public static synchronized CredentialCache getInstance() {
+        if (instance == null) {
+            instance = new CredentialCache();
+            ConfigService.getInstance().addObserver(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Define quem recebe os avisos do cache (ex: o painel de log da interface). As
+     * mensagens já terminam em quebra de linha.
+     */
+    public void setLog(Consumer<String> log) {
+        this.log = log != null ? log : mensagem -> { };
+    }
+
+    /**
+     * Retorna o certificado já desbloqueado, sem pedir a senha, ou null se ele não
+     * estiver no cache (nunca aberto, expirado ou alterado em disco).
+     */
+    public synchronized Credencial obter(File certificado) throws IOException {
+        if (atual == null) {
+            return null;
+        }
+        if (!atual.corresponde(certificado)) {
+            descartar(atual);
+            return null;
+        }
+        return reservar(atual);
+    }
+
+    /**
+     * Abre o PKCS#12 com a senha, usando a primeira entrada com chave privada, e
+     * guarda o resultado no cache. A senha recebida é apagada ao final.
+     *
+     * @throws Exception Se o arquivo não puder ser aberto ou não tiver chave privada
+     */
+    public Credencial desbloquear(File certificado, char[] senha) throws Exception {
+        SignerContext context;
+        long modificado = certificado.lastModified();
+        try {
+            KeyStore ks = KeyStore.getInstance("PKCS12");
+            try (FileInputStream fis = new FileInputStream(certificado)) {
+                ks.load(fis, senha);
+            }
+
+            // Pegar o primeiro alias que tem chave
+            String alias = null;
+            Enumeration<String> aliases = ks.aliases();
+            while (aliases.hasMoreElements()) {
+                String a = aliases.nextElement();
+                if (ks.isKeyEntry(a)) {
+                    alias = a;
+                    break;
+                }
+            }
+
+            if (alias == null) {
+                throw new Exception("Nenhuma chave privada encontrada no certificado.");
+            }
+            context = SignerContext.create(ks, alias, senha);
+        } finally {
+            Arrays.fill(senha, '\0');
+        }
+
+        synchronized (this) {
+            if (atual != null) {
+                descartar(atual);
+            }
+            atual = new Entrada(certificado.getCanonicalPath(), modificado, context);
+            return reservar(atual);
+        }
+    }
+
+    /**
+     * Descarta o certificado desbloqueado. Se estiver em uso, a chave é apagada
+     * quando a última credencial for fechada.
+     */
+    public synchronized void invalidar() {
+        if (atual != null) {
+            descartar(atual);
+        }
+    }
+
+    @Override
+    public void onConfigChanged(String key, Object newValue) {
+        if (ConfigService.KEY_CERT_PATH.equals(key) || ConfigService.KEY_CERT_PASSWORD.equals(key)) {
+            invalidar();
+        } else if (ConfigService.KEY_CREDENTIAL_IDLE_MINUTES.equals(key)) {
+            synchronized (this) {
+                if (atual != null && atual.emUso == 0) {
+                    agendarExpiracao(atual);
+                }
+            }
+        }
+    }
+
+    private Credencial reservar(Entrada entrada) {
+        entrada.emUso++;
+        if (entrada.expiracao != null) {
+            entrada.expiracao.cancel(false);
+            entrada.expiracao = null;
+        }
+        return new Credencial(entrada);
+    }
+
+    private synchronized void liberar(Entrada entrada) {
+        entrada.emUso--;
+        if (entrada.emUso > 0) {
+            return;
+        }
+        if (entrada.descartada) {
+            entrada.context.destroy();
+        } else {
+            agendarExpiracao(entrada);
+        }
+    }
+
+    private void agendarExpiracao(Entrada entrada) {
+        if (entrada.expiracao != null) {
+            entrada.expiracao.cancel(false);
+        }
+        int minutos = ConfigService.getInstance().getCredentialIdleMinutes();
+        if (minutos == 0) {
+            descartar(entrada);
+            return;
+        }
+        entrada.expiracao = timer.schedule(() -> expirar(entrada), minutos, TimeUnit.MINUTES);
+    }
+
+    private synchronized void expirar(Entrada entrada) {
+        if (entrada == atual && entrada.emUso == 0) {
+            descartar(entrada);
+            log.accept("Certificado bloqueado novamente após o tempo sem uso.\n");
+        }
+    }
+
+    private void descartar(Entrada entrada) {
+        if (entrada == atual) {
+            atual = null;
+        }
+        entrada.descartada = true;
+        if (entrada.expiracao != null) {
+            entrada.expiracao.cancel(false);
+            entrada.expiracao = null;
+        }
+        if (entrada.emUso == 0) {
+            entrada.context.destroy();
+        }
+    }
+
+    /**
+     * Certificado desbloqueado, identificado pelo arquivo e pela data de modificação.
+     */
+    private static class Entrada {
+        final String caminho;
+        final long modificado;
+        final SignerContext context;
+        int emUso;
+        boolean descartada;
+        ScheduledFuture<?> expiracao;
+
+        Entrada(String caminho, long modificado, SignerContext context) {
+            this.caminho = caminho;
+            this.modificado = modificado;
+            this.context = context;
+        }
+
+        boolean corresponde(File certificado) throws IOException {
+            return caminho.equals(certificado.getCanonicalPath()) && modificado == certificado.lastModified();
+        }
+    }
+
+    /**
+     * Uso do certificado desbloqueado durante uma assinatura. Deve ser fechada ao
+     * final, para que o tempo sem uso volte a contar.
+     */
+    public class Credencial implements AutoCloseable {
+        private final Entrada entrada;
+        private boolean fechada;
+
+        private Credencial(Entrada entrada) {
+            this.entrada = entrada;
+        }
+
+        public SignerContext getContext() {
+            return entrada.context;
+        }
+
+        @Override
+        public void close() {
+            synchronized (CredentialCache.this) {
+                if (fechada) {
+                    return;
+                }
+                fechada = true;
+                liberar(entrada);
+            }
+        }
+    }
+}
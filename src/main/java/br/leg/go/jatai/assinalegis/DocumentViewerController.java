@@ -21,27 +21,29 @@ import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.transform.Scale;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.rendering.ImageType;
 import org.apache.pdfbox.rendering.PDFRenderer;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.awt.image.BufferedImage;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.List;
 import java.util.Optional;
-import java.util.Enumeration;
 import java.io.File;
-import java.io.FileInputStream;
-import java.security.KeyStore;
 import javafx.stage.FileChooser;
 
 public class DocumentViewerController {
@@ -60,11 +62,42 @@ public class DocumentViewerController {
     @FXML private Button btnNextPage;
     @FXML private Button btnLastPage;
 
+    /** Resolução e tipo de imagem usados na renderização das páginas do visualizador. */
+    static final float RENDER_DPI = 200;
+    static final ImageType RENDER_IMAGE_TYPE = ImageType.RGB;
+
     private Consumer<String> logAction;
 
+    /**
+     * Thread única que abre, renderiza e fecha o documento exibido. O PDDocument
+     * não é seguro para uso concorrente; mantê-lo numa só thread evita fechá-lo
+     * enquanto uma página ainda é renderizada.
+     */
+    private final ExecutorService visualizador = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "visualizador");
+        t.setDaemon(true);
+        return t;
+    });
+    /**
+     * Incrementado (na thread da interface) a cada documento selecionado ou
+     * limpeza da visualização; cargas e renderizações de uma geração anterior
+     * são descartadas.
+     */
+    private final AtomicLong geracaoPreview = new AtomicLong();
+
+    // Usados apenas na thread do visualizador
     private PDDocument currentDocument;
-    private boolean currentDocumentIsOwnedByItem = false;
     private PDFRenderer pdfRenderer;
+    /** Conteúdo baixado só para exibição, liberado junto com o documento. */
+    private PdfContent conteudoExibido;
+
+    /** Carga da lista em andamento, cancelada se o usuário atualizar de novo. */
+    private CompletableFuture<Integer> listaPendente;
+    /** Incrementado a cada atualização, para ignorar lotes de uma carga anterior. */
+    private long geracaoLista;
+
+    /** Identificação do documento exibido, usada nos eventos do JFR. */
+    private volatile String currentDocumentId;
     private int currentPageIndex = 0;
     private int totalPages = 0;
 
@@ -91,6 +124,7 @@ public class DocumentViewerController {
 
     public void setLogAction(Consumer<String> logAction) {
         this.logAction = logAction;
+        CredentialCache.getInstance().setLog(this::log);
     }
 
     private void log(String message) {
@@ -202,8 +236,28 @@ public class DocumentViewerController {
         refreshDocumentList();
     }
 
-    private void clearPreview() {
-        if (currentDocument != null && !currentDocumentIsOwnedByItem) {
+    /**
+     * Limpa a visualização e agenda o fechamento do documento exibido.
+     *
+     * @return Geração da visualização a partir de agora
+     */
+    private long clearPreview() {
+        long geracao = geracaoPreview.incrementAndGet();
+        totalPages = 0;
+        visualizador.execute(this::fecharDocumento);
+
+        if (imageView != null) imageView.setImage(null);
+        if (lastRect.get() != null && group != null) {
+            group.getChildren().remove(lastRect.get());
+            lastRect.set(null);
+        }
+        updateNavigationButtons();
+        return geracao;
+    }
+
+    /** Executado na thread do visualizador. */
+    private void fecharDocumento() {
+        if (currentDocument != null) {
             try {
                 currentDocument.close();
             } catch (IOException e) {
@@ -211,76 +265,98 @@ public class DocumentViewerController {
             }
         }
         currentDocument = null;
-        currentDocumentIsOwnedByItem = false;
-
-        Platform.runLater(() -> {
-            if (imageView != null) imageView.setImage(null);
-            if (lastRect.get() != null && group != null) {
-                group.getChildren().remove(lastRect.get());
-                lastRect.set(null);
-            }
-            updateNavigationButtons();
-        });
+        pdfRenderer = null;
+        if (conteudoExibido != null) {
+            conteudoExibido.release();
+            conteudoExibido = null;
+        }
     }
 
     private void refreshDocumentList() {
 
         ObservableList<DocumentItem> items = documentListView.getItems();
+        // Os PDFs dos itens removidos são liberados pela thread do visualizador, depois
+        // do fechamento agendado em clearPreview, para não apagar o do documento exibido
+        List<DocumentItem> anteriores = new ArrayList<>(items);
         items.clear();
-        new Thread(() -> {
-            try {
-                Map<String, Object> params = new HashMap<>();
-                params.put("o", "-data_envio,-id");
-                params.put("page_size", 100);
-                //params.put("data_envio__isnull", "True");
-                //params.put("data_recebimento__isnull", "True");
-                params.put("expand", "autor");
-                InputStream response = ApiService.getInstance().get("materia", "proposicao", null, null, params);
-
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode root = mapper.readTree(response);
+        visualizador.execute(() -> anteriores.forEach(DocumentItem::release));
 
-                Platform.runLater(() -> {
+        // Uma atualização anterior ainda em andamento é descartada
+        if (listaPendente != null) {
+            listaPendente.cancel(true);
+        }
+        long geracao = ++geracaoLista;
+
+        Map<String, Object> params = new HashMap<>();
+        params.put("o", "-data_envio,-id");
+        params.put("page_size", 100);
+        //params.put("data_envio__isnull", "True");
+        //params.put("data_recebimento__isnull", "True");
+        params.put("expand", "autor");
+
+        // Os itens aparecem em lotes, enquanto as páginas seguintes ainda chegam
+        CompletableFuture<Integer> lista = new PaginatedListLoader(ApiService.getInstance()).carregar(
+                "materia", "proposicao", params, PaginatedListLoader.DEFAULT_BATCH_SIZE,
+                lote -> Platform.runLater(() -> {
+                    if (geracao == geracaoLista) {
+                        adicionarDocumentos(items, lote);
+                    }
+                }));
+        listaPendente = lista;
 
-                    if (root.has("results") && root.get("results").isArray()) {
-                        for (JsonNode node : root.get("results")) {
-                            String header = node.has("__str__") ? node.get("__str__").asText() : "";
-                            String description = node.has("descricao") ? node.get("descricao").asText() : "";
-                            DocumentItem item = new DocumentItem(header, description, node);
+        lista.whenComplete((total, erro) -> {
+            if (lista.isCancelled()) {
+                return;
+            }
+            if (erro != null) {
+                Throwable causa = erro instanceof CompletionException && erro.getCause() != null ? erro.getCause() : erro;
+                log("Erro ao atualizar documentos: " + causa.getMessage() + "\n");
+                return;
+            }
+            log("Lista de documentos atualizada com " + total + " itens.\n");
+        });
+    }
 
-                            if (node.has("data_envio") && node.get("data_envio").isNull()) {
-                                preloadPdf(item);
-                            }
+    private void adicionarDocumentos(ObservableList<DocumentItem> items, List<JsonNode> nodes) {
+        List<DocumentItem> novos = new ArrayList<>(nodes.size());
+        for (JsonNode node : nodes) {
+            String header = node.has("__str__") ? node.get("__str__").asText() : "";
+            String description = node.has("descricao") ? node.get("descricao").asText() : "";
+            DocumentItem item = new DocumentItem(header, description, node);
 
-                            // Adiciona listener para atualizar o "Selecionar Todos" quando um item mudar
-                            item.selectedProperty().addListener((obs, wasSelected, isSelected) -> updateSelectAllState());
+            if (node.has("data_envio") && node.get("data_envio").isNull()) {
+                preloadPdf(item);
+            }
 
-                            items.add(item);
-                        }
-                    }
-                    updateSelectAllState(); // Atualiza estado inicial após carregar
-                    log("Lista de documentos atualizada com " + items.size() + " itens.\n");
-                });
+            // Adiciona listener para atualizar o "Selecionar Todos" quando um item mudar
+            item.selectedProperty().addListener((obs, wasSelected, isSelected) -> updateSelectAllState());
 
-            } catch (Exception e) {
-                e.printStackTrace();
-                log("Erro ao atualizar documentos: " + e.getMessage() + "\n");
-            }
-        }).start();
+            novos.add(item);
+        }
+        items.addAll(novos);
+        updateSelectAllState();
     }
 
-    private InputStream getInputStreamFromUrl(String urlString) throws IOException {
-        if (urlString != "null" && urlString != null && !urlString.isEmpty()) {
-            URL url = java.net.URI.create(urlString).toURL();
-            java.net.HttpURLConnection connection = (java.net.HttpURLConnection) url.openConnection();
-            String token = configService.getToken();
-            if (token != null && !token.isEmpty()) {
-                connection.setRequestProperty("Authorization", "Token " + token);
+    /**
+     * Baixa o PDF da URL para um {@link PdfContent}, registrando o evento de download.
+     * O download passa pelo {@link ApiService}, reaproveitando o cache HTTP: um PDF
+     * que não mudou desde a última visita é lido do disco após um 304.
+     * <p>
+     * Não bloqueia: o download entra na fila do cliente HTTP compartilhado, e a
+     * duração do evento inclui a espera na fila.
+     */
+    private CompletableFuture<PdfContent> baixarPdfAsync(String urlString, String documento) {
+        PipelineEvents.DownloadPdf evento = new PipelineEvents.DownloadPdf();
+        evento.begin();
+        evento.documento = documento;
+        return ApiService.getInstance().downloadAsync(urlString).whenComplete((content, erro) -> {
+            if (erro != null) {
+                evento.erro = erro.getMessage();
+            } else {
+                evento.bytes = content.size();
             }
-            return connection.getInputStream();
-        } else {
-            throw new IOException("URL inválida para obter InputStream: " + urlString);
-        }
+            evento.commit();
+        });
     }
 
     private void preloadPdf(DocumentItem item) {
@@ -288,23 +364,41 @@ public class DocumentViewerController {
         if (jsonNode.has("texto_original")) {
             String urlString = jsonNode.get("texto_original").asText();
             if (urlString != "null" && urlString != null && !urlString.isEmpty()) {
-                new Thread(() -> {
-                    try {
-                        try (InputStream is = getInputStreamFromUrl(urlString)) {
-                            byte[] bytes = is.readAllBytes();
-                            item.setOriginalBytes(bytes);
-                            PDDocument doc = org.apache.pdfbox.Loader.loadPDF(bytes);
-                            item.setPdDocument(doc);
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        log("Erro ao pré-carregar PDF: " + e.getMessage() + "\n");
+                // Guarda apenas os bytes; o PDDocument é aberto quando o documento é exibido
+                baixarPdfAsync(urlString, PipelineEvents.documentoId(item)).whenComplete((content, erro) -> {
+                    if (erro != null) {
+                        Throwable causa = erro instanceof CompletionException && erro.getCause() != null ? erro.getCause() : erro;
+                        causa.printStackTrace();
+                        log("Erro ao pré-carregar PDF: " + causa.getMessage() + "\n");
+                        return;
+                    }
+                    item.setOriginalContent(content);
+                    // O item pode ter saído da lista durante o download
+                    if (item.getOriginalContent() == content) {
+                        verificarAssinaturasExistentes(item, content);
                     }
-                }).start();
+                });
             }
         }
     }
 
+    /**
+     * Verifica em segundo plano as assinaturas já presentes no documento e
+     * atualiza a lista quando terminar.
+     */
+    private void verificarAssinaturasExistentes(DocumentItem item, PdfContent content) {
+        SignatureVerifier.getInstance().verifyAsync(content).whenComplete((resultados, erro) -> {
+            if (erro != null) {
+                log("Erro ao verificar assinaturas de '" + item.getHeader() + "': " + erro.getMessage() + "\n");
+                return;
+            }
+            item.setAssinaturasExistentes(resultados);
+            if (!resultados.isEmpty()) {
+                Platform.runLater(documentListView::refresh);
+            }
+        });
+    }
+
     private void initializeDocumentList() {
         ObservableList<DocumentItem> items = FXCollections.observableArrayList();
         documentListView.setItems(items);
@@ -406,6 +500,26 @@ public class DocumentViewerController {
                             detailsVBox.getChildren().add(dataRecebimentoLabel);
                         }
 
+                        List<SignatureVerifier.ResultadoVerificacao> assinaturas = item.getAssinaturasExistentes();
+                        if (!assinaturas.isEmpty()) {
+                            boolean todasIntegras = assinaturas.stream().allMatch(SignatureVerifier.ResultadoVerificacao::isIntegra);
+                            Label assinaturasLabel = new Label((todasIntegras ? "Já assinado por: " : "Assinatura inválida: ")
+                                    + assinaturas.stream()
+                                        .map(r -> r.getNomeAssinante() != null ? r.getNomeAssinante() : r.getNome())
+                                        .collect(Collectors.joining(", ")));
+                            assinaturasLabel.setWrapText(true);
+                            assinaturasLabel.setTooltip(new Tooltip(assinaturas.stream()
+                                    .map(Object::toString)
+                                    .collect(Collectors.joining("\n"))));
+                            String cor = todasIntegras ? "#1b5e20" : "#b00020";
+                            assinaturasLabel.styleProperty().bind(
+                                javafx.beans.binding.Bindings.when(selectedProperty())
+                                    .then("-fx-font-size: 11px; -fx-text-fill: -fx-selection-bar-text;")
+                                    .otherwise("-fx-font-size: 11px; -fx-text-fill: " + cor + ";")
+                            );
+                            detailsVBox.getChildren().add(assinaturasLabel);
+                        }
+
                         Label descLabel = new Label(item.getDescription());
                         descLabel.setWrapText(true);
                         descLabel.prefWidthProperty().bind(getListView().widthProperty().subtract(65));
@@ -463,9 +577,10 @@ public class DocumentViewerController {
 
     private void handleDocumentSelection(DocumentItem item) {
         log("Item selecionado: " + item.getHeader() + "\n");
+        currentDocumentId = PipelineEvents.documentoId(item);
 
-        if (item.getPdDocument() != null) {
-            loadPdfPreview(item.getPdDocument(), item.getSavedPageIndex(), item.getSavedRect());
+        if (item.getOriginalContent() != null) {
+            loadPdfPreview(item.getOriginalContent(), item.getSavedPageIndex(), item.getSavedRect());
             return;
         }
 
@@ -481,46 +596,64 @@ public class DocumentViewerController {
         }
     }
 
-    private void loadPdfPreview(PDDocument doc, int initialPage, Rectangle initialRect) {
-        clearPreview();
-        currentDocument = doc;
-        currentDocumentIsOwnedByItem = true;
-        pdfRenderer = new PDFRenderer(currentDocument);
-        totalPages = currentDocument.getNumberOfPages();
-        currentPageIndex = initialPage;
+    private void loadPdfPreview(PdfContent content, int initialPage, Rectangle initialRect) {
+        long geracao = clearPreview();
+        // O documento exibido é aberto sobre o buffer do item, que continua dono do conteúdo
+        visualizador.execute(() -> abrirDocumento(geracao, content, null, initialPage, initialRect));
+    }
 
-        new Thread(() -> {
-            renderCurrentPage();
-            if (initialRect != null) {
-                Platform.runLater(() -> restoreRect(initialRect));
+    private void loadPdfPreview(String urlString, int initialPage, Rectangle initialRect) {
+        long geracao = clearPreview();
+        baixarPdfAsync(urlString, currentDocumentId).whenCompleteAsync((content, erro) -> {
+            if (erro != null) {
+                Throwable causa = erro instanceof CompletionException && erro.getCause() != null ? erro.getCause() : erro;
+                if (geracao == geracaoPreview.get()) {
+                    causa.printStackTrace();
+                    log("Erro ao carregar PDF: " + causa.getMessage() + "\n");
+                }
+                return;
             }
-        }).start();
+            abrirDocumento(geracao, content, content, initialPage, initialRect);
+        }, visualizador);
     }
 
-    private void loadPdfPreview(String urlString, int initialPage, Rectangle initialRect) {
-        clearPreview();
+    /**
+     * Abre o documento e renderiza a página inicial, se a seleção ainda for a mesma.
+     * Executado na thread do visualizador.
+     *
+     * @param proprio Conteúdo a liberar quando o documento for fechado, ou null se
+     *                pertencer ao item da lista
+     */
+    private void abrirDocumento(long geracao, PdfContent content, PdfContent proprio,
+                                int initialPage, Rectangle initialRect) {
+        if (geracao != geracaoPreview.get()) {
+            // Outro documento foi selecionado enquanto este carregava
+            if (proprio != null) {
+                proprio.release();
+            }
+            return;
+        }
+        try {
+            fecharDocumento();
+            conteudoExibido = proprio;
+            currentDocument = content.load();
+            pdfRenderer = new PDFRenderer(currentDocument);
+            int paginas = currentDocument.getNumberOfPages();
+            int pagina = Math.max(0, Math.min(initialPage, paginas - 1));
 
-        new Thread(() -> {
-            try {
-                try (InputStream is = getInputStreamFromUrl(urlString)) {
-                    byte[] bytes = is.readAllBytes();
-                    currentDocument = org.apache.pdfbox.Loader.loadPDF(bytes);
-                    currentDocumentIsOwnedByItem = false;
-                    pdfRenderer = new PDFRenderer(currentDocument);
-                    totalPages = currentDocument.getNumberOfPages();
-                    currentPageIndex = initialPage;
-
-                    renderCurrentPage();
-
-                    if (initialRect != null) {
-                        Platform.runLater(() -> restoreRect(initialRect));
-                    }
+            Platform.runLater(() -> {
+                if (geracao != geracaoPreview.get()) return;
+                totalPages = paginas;
+                currentPageIndex = pagina;
+                if (initialRect != null) {
+                    restoreRect(initialRect);
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
-                log("Erro ao carregar PDF: " + e.getMessage() + "\n");
-            }
-        }).start();
+            });
+            renderizarPagina(geracao, pagina);
+        } catch (Exception e) {
+            e.printStackTrace();
+            log("Erro ao carregar PDF: " + e.getMessage() + "\n");
+        }
     }
 
     private void restoreRect(Rectangle rect) {
@@ -534,19 +667,42 @@ public class DocumentViewerController {
         lastRect.set(rect);
     }
 
+    /**
+     * Agenda a renderização da página atual no visualizador.
+     */
     private void renderCurrentPage() {
-        if (currentDocument == null || pdfRenderer == null) return;
+        long geracao = geracaoPreview.get();
+        int pagina = currentPageIndex;
+        visualizador.execute(() -> renderizarPagina(geracao, pagina));
+    }
+
+    /** Executado na thread do visualizador. */
+    private void renderizarPagina(long geracao, int pagina) {
+        if (geracao != geracaoPreview.get() || pdfRenderer == null) return;
 
         try {
-            BufferedImage bim = pdfRenderer.renderImageWithDPI(currentPageIndex, 200, org.apache.pdfbox.rendering.ImageType.RGB);
+            PipelineEvents.RenderizacaoPagina evento = new PipelineEvents.RenderizacaoPagina();
+            evento.begin();
+            BufferedImage bim = pdfRenderer.renderImageWithDPI(pagina, RENDER_DPI, RENDER_IMAGE_TYPE);
             WritableImage image = SwingFXUtils.toFXImage(bim, null);
+            if (evento.shouldCommit()) {
+                evento.documento = currentDocumentId;
+                evento.pagina = pagina + 1;
+                evento.paginas = currentDocument.getNumberOfPages();
+                evento.dpi = RENDER_DPI;
+                // Imagem AWT mais a cópia JavaFX (4 bytes por pixel)
+                evento.bytes = (long) bim.getWidth() * bim.getHeight() * 4 * 2;
+                evento.commit();
+            }
 
             Platform.runLater(() -> {
+                // Descarta a página se o documento mudou ou o usuário já navegou para outra
+                if (geracao != geracaoPreview.get() || pagina != currentPageIndex) return;
                 imageView.setImage(image);
                 updateNavigationButtons();
 
                 // Se for a primeira carga (ou se o usuário quiser), ajusta a largura
-                if (currentPageIndex == 0) {
+                if (pagina == 0) {
                     onFitHeight();
                 }
             });
@@ -557,7 +713,7 @@ public class DocumentViewerController {
     }
 
     private void updateNavigationButtons() {
-        boolean hasDoc = currentDocument != null;
+        boolean hasDoc = totalPages > 0;
         btnFirstPage.setDisable(!hasDoc || currentPageIndex == 0);
         btnPrevPage.setDisable(!hasDoc || currentPageIndex == 0);
         btnNextPage.setDisable(!hasDoc || currentPageIndex >= totalPages - 1);
@@ -574,7 +730,7 @@ public class DocumentViewerController {
         if (currentPageIndex > 0) {
             currentPageIndex = 0;
             updateCurrentItemState();
-            new Thread(this::renderCurrentPage).start();
+            renderCurrentPage();
         }
     }
 
@@ -583,7 +739,7 @@ public class DocumentViewerController {
         if (currentPageIndex > 0) {
             currentPageIndex--;
             updateCurrentItemState();
-            new Thread(this::renderCurrentPage).start();
+            renderCurrentPage();
         }
     }
 
@@ -592,7 +748,7 @@ public class DocumentViewerController {
         if (currentPageIndex < totalPages - 1) {
             currentPageIndex++;
             updateCurrentItemState();
-            new Thread(this::renderCurrentPage).start();
+            renderCurrentPage();
         }
     }
 
@@ -601,7 +757,7 @@ public class DocumentViewerController {
         if (currentPageIndex < totalPages - 1) {
             currentPageIndex = totalPages - 1;
             updateCurrentItemState();
-            new Thread(this::renderCurrentPage).start();
+            renderCurrentPage();
         }
     }
 
@@ -652,7 +808,7 @@ public class DocumentViewerController {
     @FXML
     private void onSend() {
         List<DocumentItem> itemsToSend = documentListView.getItems().stream()
-                .filter(item -> item.getPdDocumentSigned() != null)
+                .filter(DocumentItem::isSigned)
                 .collect(Collectors.toList());
 
         if (itemsToSend.isEmpty()) {
@@ -666,50 +822,127 @@ public class DocumentViewerController {
         }
         log("Iniciando envio de " + itemsToSend.size() + " documentos...\n");
 
-        new Thread(() -> {
-            int successCount = 0;
-            for (DocumentItem item : itemsToSend) {
-                try {
-                    byte[] pdfBytes = item.getSignedBytes();
-                    if (pdfBytes == null) {
-                        PDDocument signedDoc = item.getPdDocumentSigned();
-                        try (java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream()) {
-                            signedDoc.save(baos);
-                            pdfBytes = baos.toByteArray();
-                        }
-                    }
-
-                    Map<String, Object> form = new HashMap<>();
-                    form.put("texto_original", new ApiService.FileData("arq.pdf", pdfBytes, "application/pdf"));
-
-                    Integer id = item.getJsonData().has("id") ? item.getJsonData().get("id").asInt() : null;
-
-                    if (id != null) {
-                        ApiService.getInstance().patch("materia", "proposicao", id, null, form, null);
-                        successCount++;
-                        Platform.runLater(() -> log("Documento '" + item.getHeader() + "' enviado com sucesso.\n"));
-                    } else {
-                        Platform.runLater(() -> log("Erro: ID não encontrado para o documento '" + item.getHeader() + "'.\n"));
-                    }
+        // Os envios seguem em paralelo, até o limite configurado, com novas tentativas nas falhas transitórias
+        UploadScheduler agendador = new UploadScheduler(ApiService.getInstance(), configService.getUploadConcurrency(), this::log);
+        ProgressoLote progresso = new ProgressoLote(itemsToSend.stream()
+                .mapToLong(item -> item.getSignedContent().size())
+                .sum());
+        long inicio = System.nanoTime();
+        List<CompletableFuture<Boolean>> envios = new ArrayList<>();
+        for (DocumentItem item : itemsToSend) {
+            envios.add(enviarDocumento(agendador, item, progresso.documento()));
+        }
 
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    Platform.runLater(() -> log("Erro ao enviar documento '" + item.getHeader() + "': " + e.getMessage() + "\n"));
+        CompletableFuture.allOf(envios.toArray(new CompletableFuture[0])).whenComplete((ignorado, erro) -> {
+            List<String> falhas = new ArrayList<>();
+            for (int i = 0; i < envios.size(); i++) {
+                if (!envios.get(i).join()) {
+                    falhas.add(itemsToSend.get(i).getHeader());
                 }
             }
+            int totalSuccess = itemsToSend.size() - falhas.size();
+            log(String.format("Envio concluído em %.1f s: %d enviados, %d com erro.\n",
+                    (System.nanoTime() - inicio) / 1e9, totalSuccess, falhas.size()));
 
-            final int totalSuccess = successCount;
             Platform.runLater(() -> {
+                Alert alert = new Alert(falhas.isEmpty() ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING);
+                alert.setTitle("Envio Concluído");
+                alert.setHeaderText(null);
+                alert.setContentText(resumoEnvio(totalSuccess, falhas));
+                alert.showAndWait();
                 if (totalSuccess > 0) {
-                    Alert alert = new Alert(Alert.AlertType.INFORMATION);
-                    alert.setTitle("Envio Concluído");
-                    alert.setHeaderText(null);
-                    alert.setContentText(totalSuccess + " documentos enviados com sucesso.");
-                    alert.showAndWait();
                     onRefreshDocuments();
                 }
             });
-        }).start();
+        });
+    }
+
+    /**
+     * Texto do resumo do lote, com os documentos que não foram enviados.
+     */
+    private static String resumoEnvio(int totalSuccess, List<String> falhas) {
+        StringBuilder resumo = new StringBuilder(totalSuccess + " documentos enviados com sucesso.");
+        if (!falhas.isEmpty()) {
+            resumo.append("\n\nNão enviados (").append(falhas.size()).append("):");
+            falhas.stream().limit(10).forEach(falha -> resumo.append("\n- ").append(falha));
+            if (falhas.size() > 10) {
+                resumo.append("\n... e mais ").append(falhas.size() - 10).append(" (veja o log).");
+            }
+        }
+        return resumo.toString();
+    }
+
+    /**
+     * Agenda o envio do PDF assinado de um documento. O future nunca falha: conclui
+     * com {@code false} e registra o erro no log quando o envio não der certo.
+     */
+    private CompletableFuture<Boolean> enviarDocumento(UploadScheduler agendador, DocumentItem item,
+                                                       ApiService.ProgressoEnvio progresso) {
+        Integer id = item.getJsonData().has("id") ? item.getJsonData().get("id").asInt() : null;
+        if (id == null) {
+            log("Erro: ID não encontrado para o documento '" + item.getHeader() + "'.\n");
+            return CompletableFuture.completedFuture(false);
+        }
+
+        Map<String, Object> form = new HashMap<>();
+        form.put("texto_original", new ApiService.FileData("arq.pdf", item.getSignedContent(), "application/pdf")
+                .comProgresso(progresso));
+
+        PipelineEvents.EnvioDocumento evento = new PipelineEvents.EnvioDocumento();
+        evento.begin();
+        evento.documento = String.valueOf(id);
+        evento.bytes = item.getSignedContent().size();
+        return agendador.enviar("materia", "proposicao", id, form).thenApply(resultado -> {
+            evento.tentativas = resultado.getTentativas();
+            String tentativas = resultado.getTentativas() > 1 ? " após " + resultado.getTentativas() + " tentativas" : "";
+            if (!resultado.isSucesso()) {
+                Throwable causa = resultado.getErro();
+                causa.printStackTrace();
+                evento.erro = causa.getMessage();
+                evento.commit();
+                log("Erro ao enviar documento '" + item.getHeader() + "'" + tentativas + ": " + causa.getMessage() + "\n");
+                return false;
+            }
+            evento.commit();
+            log("Documento '" + item.getHeader() + "' enviado com sucesso" + tentativas + ".\n");
+            return true;
+        });
+    }
+
+    /**
+     * Soma o andamento dos envios de um lote e registra no log a cada quarto do
+     * total de bytes.
+     */
+    private class ProgressoLote {
+        private final long total;
+        private final AtomicLong enviados = new AtomicLong();
+        private final AtomicInteger quartos = new AtomicInteger();
+
+        ProgressoLote(long total) {
+            this.total = total;
+        }
+
+        /**
+         * Progresso de um documento do lote. Se o corpo for reenviado, o que já havia
+         * sido contado é descontado.
+         */
+        ApiService.ProgressoEnvio documento() {
+            AtomicLong ultimo = new AtomicLong();
+            return (enviadosDocumento, totalDocumento) ->
+                    registrar(enviados.addAndGet(enviadosDocumento - ultimo.getAndSet(enviadosDocumento)));
+        }
+
+        private void registrar(long atual) {
+            if (total <= 0) {
+                return;
+            }
+            int quarto = (int) Math.min(3, atual * 4 / total);
+            int anterior = quartos.get();
+            if (quarto > anterior && quartos.compareAndSet(anterior, quarto)) {
+                log(String.format("Envio: %d%% (%.1f de %.1f MB)\n",
+                        quarto * 25, atual / 1048576.0, total / 1048576.0));
+            }
+        }
     }
 
     @FXML
@@ -757,56 +990,69 @@ public class DocumentViewerController {
             }
         }
 
-        // 2. Solicitar Senha
-        String senhaTemp = configService.getCertPassword();
-        if (senhaTemp == null || senhaTemp.isEmpty()) {
-            senhaTemp = solicitarSenha();
+        // 2. Usa o certificado já desbloqueado nesta sessão, se houver; senão, solicita a senha
+        CredentialCache.Credencial credencialCache = null;
+        try {
+            credencialCache = CredentialCache.getInstance().obter(certificadoFile);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
 
-        if (senhaTemp == null) {
-            log("Operação cancelada pelo usuário.\n");
-            return;
+        String senhaTemp = null;
+        if (credencialCache == null) {
+            senhaTemp = configService.getCertPassword();
+            if (senhaTemp == null || senhaTemp.isEmpty()) {
+                senhaTemp = solicitarSenha();
+            }
+
+            if (senhaTemp == null) {
+                log("Operação cancelada pelo usuário.\n");
+                return;
+            }
+        } else {
+            log("Certificado já desbloqueado nesta sessão.\n");
         }
 
         final String senha = senhaTemp;
+        final CredentialCache.Credencial credencialSessao = credencialCache;
 
         log("Iniciando processo de assinatura para " + selectedItems.size() + " documentos...\n");
 
         final File finalCertificadoFile = certificadoFile;
 
         new Thread(() -> {
+            CredentialCache.Credencial credencial = credencialSessao;
             try {
-                // Carregar KeyStore
-                KeyStore ks = KeyStore.getInstance("PKCS12");
-                try (FileInputStream fis = new FileInputStream(finalCertificadoFile)) {
-                    ks.load(fis, senha.toCharArray());
-                }
-
-                // Pegar o primeiro alias que tem chave
-                String alias = null;
-                Enumeration<String> aliases = ks.aliases();
-                while (aliases.hasMoreElements()) {
-                    String a = aliases.nextElement();
-                    if (ks.isKeyEntry(a)) {
-                        alias = a;
-                        break;
-                    }
-                }
-
-                if (alias == null) {
-                    throw new Exception("Nenhuma chave privada encontrada no certificado.");
+                // Desbloqueia o certificado (uma vez por sessão)
+                if (credencial == null) {
+                    credencial = CredentialCache.getInstance().desbloquear(finalCertificadoFile, senha.toCharArray());
                 }
 
                 // Assinar
                 AssinaturaService service = new AssinaturaService();
-                service.assinarDocumentos(selectedItems, ks, alias, senha.toCharArray());
+                List<AssinaturaService.ResultadoAssinatura> resultados =
+                        service.assinarDocumentos(selectedItems, credencial.getContext());
+
+                long sucessos = resultados.stream().filter(AssinaturaService.ResultadoAssinatura::isSucesso).count();
+                for (AssinaturaService.ResultadoAssinatura resultado : resultados) {
+                    if (!resultado.isSucesso()) {
+                        log("Erro ao assinar '" + resultado.getItem().getHeader() + "': "
+                                + resultado.getErro().getMessage() + "\n");
+                    }
+                }
+                long falhas = resultados.size() - sucessos;
 
                 Platform.runLater(() -> {
-                    log("Sucesso! " + selectedItems.size() + " documentos assinados.\n");
-                    Alert alert = new Alert(Alert.AlertType.INFORMATION);
-                    alert.setTitle("Sucesso");
+                    log("Sucesso! " + sucessos + " documentos assinados.\n");
+                    Alert alert = new Alert(falhas == 0 ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING);
+                    alert.setTitle(falhas == 0 ? "Sucesso" : "Aviso");
                     alert.setHeaderText(null);
-                    alert.setContentText("Documentos assinados com sucesso!");
+                    if (falhas == 0) {
+                        alert.setContentText("Documentos assinados com sucesso!");
+                    } else {
+                        alert.setContentText(sucessos + " documentos assinados, " + falhas
+                                + " com erro. Consulte o log para mais detalhes.");
+                    }
                     alert.showAndWait();
                 });
 
@@ -820,6 +1066,10 @@ public class DocumentViewerController {
                     alert.setContentText(e.getMessage());
                     alert.showAndWait();
                 });
+            } finally {
+                if (credencial != null) {
+                    credencial.close();
+                }
             }
         }).start();
     }
@@ -925,10 +1175,10 @@ public class DocumentViewerController {
         private final javafx.beans.property.BooleanProperty selected = new javafx.beans.property.SimpleBooleanProperty(false);
         private int savedPageIndex = 0;
         private Rectangle savedRect = null;
-        private PDDocument pdDocument;
-        private PDDocument pdDocumentSigned;
-        private byte[] originalBytes;
-        private byte[] signedBytes;
+        private volatile PdfContent originalContent;
+        private volatile PdfContent signedContent;
+        private volatile List<SignatureVerifier.ResultadoVerificacao> assinaturasExistentes = List.of();
+        private boolean liberado;
 
         public DocumentItem(String header, String description, JsonNode jsonData) {
             this.header = header;
@@ -950,16 +1200,60 @@ public class DocumentViewerController {
         public Rectangle getSavedRect() { return savedRect; }
         public void setSavedRect(Rectangle savedRect) { this.savedRect = savedRect; }
 
-        public PDDocument getPdDocument() { return pdDocument; }
-        public void setPdDocument(PDDocument pdDocument) { this.pdDocument = pdDocument; }
+        public boolean isSigned() { return signedContent != null; }
+
+        /**
+         * Assinaturas que o documento já tinha ao ser carregado (coassinaturas).
+         */
+        public List<SignatureVerifier.ResultadoVerificacao> getAssinaturasExistentes() { return assinaturasExistentes; }
+        public void setAssinaturasExistentes(List<SignatureVerifier.ResultadoVerificacao> assinaturasExistentes) {
+            this.assinaturasExistentes = List.copyOf(assinaturasExistentes);
+        }
+
+        /**
+         * PDF original, compartilhado pelo visualizador e pela assinatura. Ao ser
+         * substituído (ou limpo com null), a versão anterior é liberada.
+         */
+        public PdfContent getOriginalContent() { return originalContent; }
+        public synchronized void setOriginalContent(PdfContent originalContent) {
+            if (liberado && originalContent != null) {
+                originalContent.release();
+                return;
+            }
+            PdfContent anterior = this.originalContent;
+            this.originalContent = originalContent;
+            liberar(anterior, originalContent);
+        }
 
-        public PDDocument getPdDocumentSigned() { return pdDocumentSigned; }
-        public void setPdDocumentSigned(PDDocument pdDocumentSigned) { this.pdDocumentSigned = pdDocumentSigned; }
+        /**
+         * PDF assinado, compartilhado pela assinatura e pelo envio. Ao ser
+         * substituído (ou limpo com null), a versão anterior é liberada.
+         */
+        public PdfContent getSignedContent() { return signedContent; }
+        public synchronized void setSignedContent(PdfContent signedContent) {
+            if (liberado && signedContent != null) {
+                signedContent.release();
+                return;
+            }
+            PdfContent anterior = this.signedContent;
+            this.signedContent = signedContent;
+            liberar(anterior, signedContent);
+        }
 
-        public byte[] getOriginalBytes() { return originalBytes; }
-        public void setOriginalBytes(byte[] originalBytes) { this.originalBytes = originalBytes; }
+        /**
+         * Libera os PDFs do item, que saiu da lista. Um conteúdo recebido depois
+         * (ex: pré-carga ainda em andamento) é liberado assim que chegar.
+         */
+        public synchronized void release() {
+            setOriginalContent(null);
+            setSignedContent(null);
+            liberado = true;
+        }
 
-        public byte[] getSignedBytes() { return signedBytes; }
-        public void setSignedBytes(byte[] signedBytes) { this.signedBytes = signedBytes; }
+        private static void liberar(PdfContent anterior, PdfContent novo) {
+            if (anterior != null && anterior != novo) {
+                anterior.release();
+            }
+        }
     }
 }
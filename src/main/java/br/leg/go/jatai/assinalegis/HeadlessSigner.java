@@ -0,0 +1,580 @@
+package br.leg.go.jatai.assinalegis;
+
+import br.leg.go.jatai.assinalegis.DocumentViewerController.DocumentItem;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Console;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Assinatura em lote pela linha de comando, sem iniciar o JavaFX.
+ * <p>
+ * Busca as proposições pendentes (ainda não enviadas) na API, assina-as com o
+ * {@link AssinaturaService} e envia os PDFs assinados pelo {@link ApiService}.
+ * Os documentos são processados em lotes, para que apenas um lote fique em
+ * memória por vez, e ao final são impressas as estatísticas de vazão.
+ * <p>
+ * Uso: {@code java -jar assinalegis.jar --headless --cert certificado.p12 [opções]}
+ * (veja {@link #imprimirUso(PrintStream)}).
+ */
+public class HeadlessSigner {
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FALHAS = 1;
+    public static final int EXIT_USO = 2;
+
+    /** Variável de ambiente padrão com a senha do certificado. */
+    public static final String ENV_SENHA = "ASSINALEGIS_CERT_PASSWORD";
+
+    private static final int DOWNLOADS_SIMULTANEOS = 4;
+
+    private final Opcoes opcoes;
+    private final ApiService apiService;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Estatisticas estatisticas = new Estatisticas();
+
+    public HeadlessSigner(Opcoes opcoes) {
+        this.opcoes = opcoes;
+        this.apiService = ApiService.getInstance();
+    }
+
+    public static void main(String[] args) {
+        // Nenhuma janela é aberta; a aparência da assinatura é desenhada com AWT em memória
+        System.setProperty("java.awt.headless", "true");
+
+        Opcoes opcoes;
+        try {
+            opcoes = Opcoes.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Erro: " + e.getMessage());
+            imprimirUso(System.err);
+            System.exit(EXIT_USO);
+            return;
+        }
+        if (opcoes.ajuda) {
+            imprimirUso(System.out);
+            System.exit(EXIT_OK);
+            return;
+        }
+
+        int codigo;
+        try {
+            codigo = new HeadlessSigner(opcoes).executar();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("Erro: " + e.getMessage());
+            codigo = EXIT_FALHAS;
+        }
+        System.exit(codigo);
+    }
+
+    public static void imprimirUso(PrintStream out) {
+        out.println("Uso: assinalegis --headless --cert <arquivo.p12> [opções]");
+        out.println();
+        out.println("  --url <url>            URL base do SAPL (padrão: a configurada no aplicativo)");
+        out.println("  --token <token>        Token da API (padrão: o configurado no aplicativo)");
+        out.println("  --cert <arquivo>       Certificado PKCS#12 (padrão: o configurado no aplicativo)");
+        out.println("  --senha-env <VAR>      Variável de ambiente com a senha (padrão: " + ENV_SENHA + ")");
+        out.println("  --alias <alias>        Alias da chave no certificado (padrão: a primeira chave)");
+        out.println("  --filtro <campo=valor> Filtro extra da API de proposições (pode repetir)");
+        out.println("  --limite <n>           Número máximo de documentos a assinar (padrão: todos)");
+        out.println("  --lote <n>             Documentos por lote de assinatura (padrão: 20)");
+        out.println("  --page-size <n>        Itens por página da API (padrão: 100)");
+        out.println("  --saida <diretório>    Grava também uma cópia de cada PDF assinado");
+        out.println("  --simular              Assina, mas não envia os documentos");
+        out.println("  --reassinar            Assina mesmo documentos que já têm a assinatura deste certificado");
+        out.println("  --ajuda                Mostra esta mensagem");
+        out.println();
+        out.println("Modo serviço: assinalegis --daemon --cert <arquivo.p12> [opções]");
+        out.println();
+        out.println("  --porta <n>            Porta da API local em 127.0.0.1 (padrão: " + SigningDaemon.PORTA_PADRAO + ")");
+        out.println("  --workers <n>          Tarefas executadas ao mesmo tempo (padrão: 2)");
+        out.println("  --fila <n>             Tarefas aguardando na fila (padrão: 100)");
+        out.println();
+        out.println("Sem a variável de senha, usa a senha configurada no aplicativo ou pergunta no terminal.");
+    }
+
+    /**
+     * Executa o lote completo e devolve o código de saída do processo.
+     */
+    public int executar() throws Exception {
+        aplicarConfiguracao(opcoes);
+        SignerContext context = criarContexto(opcoes);
+        log("Assinando como: " + context.getNomeAssinante());
+
+        AssinaturaService service = new AssinaturaService();
+        ExecutorService downloads = Executors.newFixedThreadPool(DOWNLOADS_SIMULTANEOS, r -> {
+            Thread t = new Thread(r, "download");
+            t.setDaemon(true);
+            return t;
+        });
+
+        estatisticas.iniciar();
+        try {
+            List<DocumentItem> lote = new ArrayList<>();
+            Integer pagina = 1;
+            while (pagina != null && !limiteAtingido()) {
+                JsonNode root = buscarPagina(pagina);
+                pagina = proximaPagina(root, pagina);
+
+                for (JsonNode node : root.path("results")) {
+                    if (limiteAtingido()) {
+                        break;
+                    }
+                    if (!isPendente(node)) {
+                        continue;
+                    }
+                    estatisticas.encontrados++;
+                    lote.add(criarItem(node));
+
+                    if (lote.size() >= opcoes.lote) {
+                        processarLote(lote, service, context, downloads);
+                        lote.clear();
+                    }
+                }
+            }
+            if (!lote.isEmpty()) {
+                processarLote(lote, service, context, downloads);
+            }
+        } finally {
+            downloads.shutdownNow();
+            estatisticas.finalizar();
+        }
+
+        estatisticas.imprimir(System.out, opcoes.simular);
+        return estatisticas.falhas == 0 ? EXIT_OK : EXIT_FALHAS;
+    }
+
+    private boolean limiteAtingido() {
+        return opcoes.limite > 0 && estatisticas.encontrados >= opcoes.limite;
+    }
+
+    /**
+     * Aplica a URL e o token informados, apenas nesta execução, e carrega os dados da Casa Legislativa,
+     * usados na aparência da assinatura.
+     */
+    static void aplicarConfiguracao(Opcoes opcoes) {
+        ConfigService configService = ConfigService.getInstance();
+        // Não grava nas preferências: a execução pela linha de comando não deve
+        // alterar a configuração usada pela interface gráfica
+        configService.setConexaoSessao(opcoes.url, opcoes.token);
+        if (configService.getUrl().isEmpty()) {
+            throw new IllegalArgumentException("URL do SAPL não informada nem configurada.");
+        }
+
+        try {
+            configService.refreshCasaLegislativa();
+        } catch (Exception e) {
+            log("Aviso: não foi possível obter os dados da Casa Legislativa: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Abre o certificado e cria o contexto de assinatura, reaproveitado por todos os lotes.
+     */
+    static SignerContext criarContexto(Opcoes opcoes) throws Exception {
+        ConfigService configService = ConfigService.getInstance();
+        String certPath = opcoes.certPath != null ? opcoes.certPath : configService.getCertPath();
+        if (certPath == null || certPath.isEmpty() || !Files.isRegularFile(Path.of(certPath))) {
+            throw new IllegalArgumentException("Certificado não encontrado: " + certPath);
+        }
+        char[] senha = obterSenha(opcoes, configService);
+
+        KeyStore ks = KeyStore.getInstance("PKCS12");
+        try (FileInputStream fis = new FileInputStream(certPath)) {
+            ks.load(fis, senha);
+        }
+
+        String alias = opcoes.alias;
+        if (alias == null) {
+            Enumeration<String> aliases = ks.aliases();
+            while (aliases.hasMoreElements()) {
+                String a = aliases.nextElement();
+                if (ks.isKeyEntry(a)) {
+                    alias = a;
+                    break;
+                }
+            }
+        }
+        if (alias == null || !ks.isKeyEntry(alias)) {
+            throw new Exception("Nenhuma chave privada encontrada no certificado.");
+        }
+        return SignerContext.create(ks, alias, senha);
+    }
+
+    private static char[] obterSenha(Opcoes opcoes, ConfigService configService) {
+        String senha = System.getenv(opcoes.senhaEnv);
+        if (senha != null) {
+            return senha.toCharArray();
+        }
+        senha = configService.getCertPassword();
+        if (senha != null && !senha.isEmpty()) {
+            return senha.toCharArray();
+        }
+        Console console = System.console();
+        if (console != null) {
+            char[] lida = console.readPassword("Senha do certificado: ");
+            if (lida != null) {
+                return lida;
+            }
+        }
+        throw new IllegalArgumentException("Senha do certificado não informada (defina " + opcoes.senhaEnv + ").");
+    }
+
+    private JsonNode buscarPagina(int pagina) throws Exception {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("o", "-data_envio,-id");
+        params.put("page_size", opcoes.pageSize);
+        params.put("page", pagina);
+        params.put("expand", "autor");
+        params.putAll(opcoes.filtros);
+        PipelineEvents.ListaDocumentos evento = new PipelineEvents.ListaDocumentos();
+        evento.begin();
+        evento.pagina = pagina;
+        try (InputStream response = apiService.get("materia", "proposicao", null, null, params)) {
+            JsonNode root = mapper.readTree(response);
+            evento.itens = root.path("results").size();
+            return root;
+        } catch (Exception e) {
+            evento.erro = e.getMessage();
+            throw e;
+        } finally {
+            evento.commit();
+        }
+    }
+
+    /**
+     * Número da próxima página, pela paginação do SAPL ({@code pagination.next_page})
+     * ou pelo campo {@code next} do DRF; null quando não houver.
+     */
+    private static Integer proximaPagina(JsonNode root, int atual) {
+        JsonNode nextPage = root.path("pagination").path("next_page");
+        if (nextPage.canConvertToInt()) {
+            return nextPage.asInt();
+        }
+        JsonNode next = root.path("next");
+        if (next.isTextual() && !next.asText().isEmpty()) {
+            return atual + 1;
+        }
+        return null;
+    }
+
+    static DocumentItem criarItem(JsonNode node) {
+        String header = node.has("__str__") ? node.get("__str__").asText() : "";
+        String description = node.has("descricao") ? node.get("descricao").asText() : "";
+        return new DocumentItem(header, description, node);
+    }
+
+    /**
+     * Mesmo critério da interface: ainda não enviada e com texto original.
+     */
+    static boolean isPendente(JsonNode node) {
+        if (!node.has("data_envio") || !node.get("data_envio").isNull()) {
+            return false;
+        }
+        JsonNode texto = node.path("texto_original");
+        return texto.isTextual() && !texto.asText().isEmpty();
+    }
+
+    private void processarLote(List<DocumentItem> lote, AssinaturaService service, SignerContext context,
+                               ExecutorService downloads) throws Exception {
+        List<DocumentItem> baixados = baixar(lote, context, downloads);
+        if (baixados.isEmpty()) {
+            return;
+        }
+
+        long inicio = System.nanoTime();
+        List<AssinaturaService.ResultadoAssinatura> resultados = service.assinarDocumentos(baixados, context);
+        estatisticas.nanosAssinatura += System.nanoTime() - inicio;
+
+        for (AssinaturaService.ResultadoAssinatura resultado : resultados) {
+            DocumentItem item = resultado.getItem();
+            if (resultado.isSucesso()) {
+                estatisticas.assinados++;
+                estatisticas.bytesAssinados += item.getSignedContent().size();
+                estatisticas.millisAssinaturaDocumentos += resultado.getDuracaoMillis();
+                enviar(item);
+            } else {
+                estatisticas.falhas++;
+                log("Erro ao assinar '" + item.getHeader() + "': " + resultado.getErro().getMessage());
+            }
+            // Libera o lote antes do próximo
+            item.setOriginalContent(null);
+            item.setSignedContent(null);
+        }
+        log(String.format("Progresso: %d assinados, %d enviados, %d falhas.",
+                estatisticas.assinados, estatisticas.enviados, estatisticas.falhas));
+    }
+
+    /**
+     * Baixa os PDFs do lote em paralelo, descartando os que falharem e os que já
+     * tiverem a assinatura deste certificado.
+     */
+    private List<DocumentItem> baixar(List<DocumentItem> lote, SignerContext context, ExecutorService downloads)
+            throws InterruptedException {
+        long inicio = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (DocumentItem item : lote) {
+            futures.add(downloads.submit(() -> {
+                baixarOriginal(item, !opcoes.reassinar);
+                return null;
+            }));
+        }
+
+        List<DocumentItem> baixados = new ArrayList<>();
+        for (int i = 0; i < lote.size(); i++) {
+            DocumentItem item = lote.get(i);
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException e) {
+                estatisticas.falhas++;
+                log("Erro ao baixar '" + item.getHeader() + "': " + e.getCause().getMessage());
+                item.setOriginalContent(null);
+                continue;
+            }
+            if (jaAssinadoPor(item, context.getNomeAssinante())) {
+                estatisticas.ignorados++;
+                log("Ignorado (já assinado por " + context.getNomeAssinante() + "): " + item.getHeader());
+                item.setOriginalContent(null);
+                continue;
+            }
+            estatisticas.baixados++;
+            estatisticas.bytesBaixados += item.getOriginalContent().size();
+            baixados.add(item);
+        }
+        estatisticas.nanosDownload += System.nanoTime() - inicio;
+        return baixados;
+    }
+
+    /**
+     * Baixa o texto original da proposição para o item e, se pedido, verifica as
+     * assinaturas que ele já tem.
+     */
+    static void baixarOriginal(DocumentItem item, boolean verificarExistentes) throws Exception {
+        String url = item.getJsonData().path("texto_original").asText();
+        PipelineEvents.DownloadPdf evento = new PipelineEvents.DownloadPdf();
+        evento.begin();
+        evento.documento = PipelineEvents.documentoId(item);
+        try {
+            item.setOriginalContent(ApiService.getInstance().downloadContent(url));
+            evento.bytes = item.getOriginalContent().size();
+        } catch (Exception e) {
+            evento.erro = e.getMessage();
+            throw e;
+        } finally {
+            evento.commit();
+        }
+        if (verificarExistentes) {
+            item.setAssinaturasExistentes(SignatureVerifier.getInstance().verify(item.getOriginalContent()));
+        }
+    }
+
+    static boolean jaAssinadoPor(DocumentItem item, String nomeAssinante) {
+        for (SignatureVerifier.ResultadoVerificacao existente : item.getAssinaturasExistentes()) {
+            if (existente.isIntegra() && nomeAssinante.equals(existente.getNomeAssinante())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void enviar(DocumentItem item) {
+        long inicio = System.nanoTime();
+        try {
+            if (opcoes.saida != null) {
+                Path arquivo = opcoes.saida.resolve(item.getJsonData().path("id").asText() + "_"
+                        + AssinaturaService.slugify(item.getHeader()) + "_assinado.pdf");
+                try (OutputStream out = Files.newOutputStream(arquivo)) {
+                    item.getSignedContent().writeTo(out);
+                }
+            }
+            if (opcoes.simular) {
+                return;
+            }
+            enviarAssinado(item);
+            estatisticas.enviados++;
+        } catch (Exception e) {
+            e.printStackTrace();
+            estatisticas.falhas++;
+            log("Erro ao enviar '" + item.getHeader() + "': " + e.getMessage());
+        } finally {
+            estatisticas.nanosEnvio += System.nanoTime() - inicio;
+        }
+    }
+
+    /**
+     * Envia o PDF assinado como novo texto original da proposição, como faz a interface.
+     */
+    static void enviarAssinado(DocumentItem item) throws Exception {
+        Integer id = item.getJsonData().has("id") ? item.getJsonData().get("id").asInt() : null;
+        if (id == null) {
+            throw new IOException("ID não encontrado para o documento.");
+        }
+        Map<String, Object> form = new LinkedHashMap<>();
+        form.put("texto_original", new ApiService.FileData("arq.pdf", item.getSignedContent(), "application/pdf"));
+        PipelineEvents.EnvioDocumento evento = new PipelineEvents.EnvioDocumento();
+        evento.begin();
+        evento.documento = String.valueOf(id);
+        evento.bytes = item.getSignedContent().size();
+        evento.tentativas = 1;
+        try (InputStream response = ApiService.getInstance().patch("materia", "proposicao", id, null, form, null)) {
+            response.transferTo(OutputStream.nullOutputStream());
+        } catch (Exception e) {
+            evento.erro = e.getMessage();
+            throw e;
+        } finally {
+            evento.commit();
+        }
+    }
+
+    static void log(String mensagem) {
+        System.out.println(mensagem);
+    }
+
+    /**
+     * Opções da linha de comando.
+     */
+    public static class Opcoes {
+        String url;
+        String token;
+        String certPath;
+        String senhaEnv = ENV_SENHA;
+        String alias;
+        final Map<String, Object> filtros = new LinkedHashMap<>();
+        int limite = 0;
+        int lote = 20;
+        int pageSize = 100;
+        Path saida;
+        boolean simular;
+        boolean reassinar;
+        boolean ajuda;
+        // Modo serviço (SigningDaemon)
+        boolean daemon;
+        int porta = SigningDaemon.PORTA_PADRAO;
+        int workers = 2;
+        int fila = 100;
+
+        public static Opcoes parse(String[] args) {
+            Opcoes opcoes = new Opcoes();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--headless" -> { }
+                    case "--daemon" -> opcoes.daemon = true;
+                    case "--porta" -> opcoes.porta = inteiro(args, ++i, arg, 1);
+                    case "--workers" -> opcoes.workers = inteiro(args, ++i, arg, 1);
+                    case "--fila" -> opcoes.fila = inteiro(args, ++i, arg, 1);
+                    case "--url" -> opcoes.url = valor(args, ++i, arg);
+                    case "--token" -> opcoes.token = valor(args, ++i, arg);
+                    case "--cert" -> opcoes.certPath = valor(args, ++i, arg);
+                    case "--senha-env" -> opcoes.senhaEnv = valor(args, ++i, arg);
+                    case "--alias" -> opcoes.alias = valor(args, ++i, arg);
+                    case "--filtro" -> {
+                        String filtro = valor(args, ++i, arg);
+                        int igual = filtro.indexOf('=');
+                        if (igual <= 0) {
+                            throw new IllegalArgumentException("Filtro deve ter o formato campo=valor: " + filtro);
+                        }
+                        opcoes.filtros.put(filtro.substring(0, igual), filtro.substring(igual + 1));
+                    }
+                    case "--limite" -> opcoes.limite = inteiro(args, ++i, arg, 0);
+                    case "--lote" -> opcoes.lote = inteiro(args, ++i, arg, 1);
+                    case "--page-size" -> opcoes.pageSize = inteiro(args, ++i, arg, 1);
+                    case "--saida" -> {
+                        opcoes.saida = Path.of(valor(args, ++i, arg));
+                        if (!Files.isDirectory(opcoes.saida)) {
+                            throw new IllegalArgumentException("Diretório de saída não existe: " + opcoes.saida);
+                        }
+                    }
+                    case "--simular" -> opcoes.simular = true;
+                    case "--reassinar" -> opcoes.reassinar = true;
+                    case "--ajuda", "--help", "-h" -> opcoes.ajuda = true;
+                    default -> throw new IllegalArgumentException("Opção desconhecida: " + arg);
+                }
+            }
+            return opcoes;
+        }
+
+        private static String valor(String[] args, int i, String opcao) {
+            if (i >= args.length) {
+                throw new IllegalArgumentException("Valor ausente para " + opcao);
+            }
+            return args[i];
+        }
+
+        private static int inteiro(String[] args, int i, String opcao, int minimo) {
+            String valor = valor(args, i, opcao);
+            try {
+                int numero = Integer.parseInt(valor);
+                if (numero < minimo) {
+                    throw new IllegalArgumentException(opcao + " deve ser no mínimo " + minimo);
+                }
+                return numero;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Número inválido para " + opcao + ": " + valor);
+            }
+        }
+    }
+
+    /**
+     * Contadores e tempos do lote, para o resumo final.
+     */
+    private static class Estatisticas {
+        int encontrados;
+        int baixados;
+        int ignorados;
+        int assinados;
+        int enviados;
+        int falhas;
+        long bytesBaixados;
+        long bytesAssinados;
+        long nanosDownload;
+        long nanosAssinatura;
+        long nanosEnvio;
+        long millisAssinaturaDocumentos;
+        private long inicio;
+        private long fim;
+
+        void iniciar() {
+            inicio = System.nanoTime();
+        }
+
+        void finalizar() {
+            fim = System.nanoTime();
+        }
+
+        void imprimir(PrintStream out, boolean simular) {
+            double segundos = Math.max(1, fim - inicio) / 1e9;
+            out.println();
+            out.println("==== Resumo ====");
+            out.printf("Pendentes encontrados: %d%n", encontrados);
+            out.printf("Baixados: %d (%.1f MB em %.1f s)%n", baixados, bytesBaixados / 1e6, nanosDownload / 1e9);
+            out.printf("Ignorados (já assinados): %d%n", ignorados);
+            out.printf("Assinados: %d (%.1f MB em %.1f s)%n", assinados, bytesAssinados / 1e6, nanosAssinatura / 1e9);
+            out.printf("Enviados: %d%s (%.1f s)%n", enviados, simular ? " (simulação)" : "", nanosEnvio / 1e9);
+            out.printf("Falhas: %d%n", falhas);
+            out.printf("Tempo total: %.1f s%n", segundos);
+            out.printf("Vazão: %.2f documentos/s, %.2f MB/s%n", assinados / segundos, bytesAssinados / 1e6 / segundos);
+            if (assinados > 0) {
+                out.printf("Tempo médio de assinatura por documento: %d ms%n", millisAssinaturaDocumentos / assinados);
+            }
+        }
+    }
+}
@@ -1,7 +1,20 @@
 package br.leg.go.jatai.assinalegis;
 
+import java.util.Arrays;
+import java.util.List;
+
 public class Launcher {
     public static void main(String[] args) {
+        List<String> opcoes = Arrays.asList(args);
+        // Modos sem interface: não iniciam o JavaFX
+        if (opcoes.contains("--daemon")) {
+            SigningDaemon.main(args);
+            return;
+        }
+        if (opcoes.contains("--headless")) {
+            HeadlessSigner.main(args);
+            return;
+        }
         App.main(args);
     }
 }
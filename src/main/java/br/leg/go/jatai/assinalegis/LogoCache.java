@@ -0,0 +1,320 @@
+package br.leg.go.jatai.assinalegis;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache do logotipo da Casa Legislativa usado na assinatura visível.
+ * <p>
+ * Mantém duas camadas: em memória (imagem decodificada e versões já reduzidas para
+ * a área do ícone) e em disco ({@code ~/.assinalegis/cache/logos}), com ETag e
+ * Last-Modified para revalidação por GET condicional. A revalidação ocorre uma vez
+ * por sessão e sempre que {@link ConfigService#setCasaLegislativa(Object)} notifica
+ * uma nova casa.
+ */
+public class LogoCache implements ConfigService.ConfigObserver {
+
+    /** Intervalo mínimo entre novas tentativas após uma falha de download. */
+    private static final long RETRY_INTERVAL_MS = 60_000;
+
+    private static final String DEFAULT_ICON = "/icon.png";
+
+    private static LogoCache instance;
+
+    private final Map<String, BufferedImage> originals = new ConcurrentHashMap<>();
+    private final Map<String, BufferedImage> scaled = new ConcurrentHashMap<>();
+    private final Map<String, Long> failures = new ConcurrentHashMap<>();
+    private final Set<String> revalidated = ConcurrentHashMap.newKeySet();
+    /** Cargas em andamento por URL; quem pede a mesma URL aguarda a mesma carga. */
+    private final Map<String, CompletableFuture<BufferedImage>> loading = new ConcurrentHashMap<>();
+    private final File cacheDir;
+
+    private LogoCache() {
+        this.cacheDir = ConfigService.getInstance().getCacheDir("logos");
+    }
+
+    public static synchronized LogoCache getInstance() {
+        if (instance == null) {
+            instance = new LogoCache();
+            ConfigService.getInstance().addObserver(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Retorna o logotipo já reduzido para caber em maxWidth x maxHeight, mantendo a
+     * proporção, ou null se não for possível obtê-lo.
+     */
+    public BufferedImage getLogo(String url, int maxWidth, int maxHeight) {
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+
+        String scaledKey = url + "@" + maxWidth + "x" + maxHeight;
+        BufferedImage result = scaled.get(scaledKey);
+        if (result != null) {
+            return result;
+        }
+
+        BufferedImage original = getOriginal(url);
+        if (original == null) {
+            return null;
+        }
+        return scaled.computeIfAbsent(scaledKey, k -> scale(original, maxWidth, maxHeight));
+    }
+
+    /**
+     * Ícone padrão do aplicativo, reduzido para maxWidth x maxHeight, usado quando a
+     * casa não tem logotipo ou ele não pode ser obtido.
+     */
+    public BufferedImage getDefaultLogo(int maxWidth, int maxHeight) {
+        String scaledKey = DEFAULT_ICON + "@" + maxWidth + "x" + maxHeight;
+        BufferedImage result = scaled.get(scaledKey);
+        if (result != null) {
+            return result;
+        }
+        BufferedImage original = originals.computeIfAbsent(DEFAULT_ICON, k -> {
+            try (InputStream is = App.class.getResourceAsStream(DEFAULT_ICON)) {
+                return is != null ? ImageIO.read(is) : null;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        });
+        if (original == null) {
+            return null;
+        }
+        return scaled.computeIfAbsent(scaledKey, k -> scale(original, maxWidth, maxHeight));
+    }
+
+    private BufferedImage getOriginal(String url) {
+        BufferedImage image = originals.get(url);
+        if (image != null) {
+            return image;
+        }
+
+        Long lastFailure = failures.get(url);
+        if (lastFailure != null && System.currentTimeMillis() - lastFailure < RETRY_INTERVAL_MS) {
+            return null;
+        }
+
+        // Disco e rede ficam fora de qualquer lock: outras URLs (e quem já tem a
+        // imagem em memória) não esperam por este download
+        CompletableFuture<BufferedImage> carga = new CompletableFuture<>();
+        CompletableFuture<BufferedImage> existente = loading.putIfAbsent(url, carga);
+        if (existente != null) {
+            return existente.join();
+        }
+        try {
+            image = load(url);
+            return image;
+        } finally {
+            carga.complete(image);
+            loading.remove(url, carga);
+        }
+    }
+
+    private BufferedImage load(String url) {
+        BufferedImage image = originals.get(url);
+        if (image != null) {
+            return image;
+        }
+
+        // Camada em disco: usa imediatamente e revalida em segundo plano
+        image = readFromDisk(url);
+        if (image != null) {
+            synchronized (this) {
+                originals.put(url, image);
+            }
+            refreshAsync(url);
+            return image;
+        }
+
+        try {
+            image = fetch(url);
+            revalidated.add(url);
+        } catch (Exception e) {
+            System.err.println("Erro ao carregar logotipo da URL: " + url);
+            e.printStackTrace();
+        }
+        synchronized (this) {
+            if (image == null) {
+                failures.put(url, System.currentTimeMillis());
+                return null;
+            }
+            failures.remove(url);
+            originals.put(url, image);
+            return image;
+        }
+    }
+
+    /**
+     * Revalida o logotipo em segundo plano, no máximo uma vez por sessão.
+     */
+    private void refreshAsync(String url) {
+        if (!revalidated.add(url)) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                BufferedImage image = fetch(url);
+                if (image != null) {
+                    originals.put(url, image);
+                    scaled.keySet().removeIf(k -> k.startsWith(url + "@"));
+                    SignatureAppearanceCache.getInstance().invalidate();
+                }
+            } catch (Exception e) {
+                System.err.println("Erro ao revalidar logotipo: " + e.getMessage());
+            }
+        }, "logo-cache");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Baixa o logotipo com GET condicional. Retorna a nova imagem, ou null se o
+     * servidor responder 304 (a cópia em disco continua válida).
+     */
+    private BufferedImage fetch(String url) throws IOException {
+        Properties meta = readMeta(url);
+        Request.Builder builder = new Request.Builder().url(url);
+        if (meta.getProperty("etag") != null) {
+            builder.header("If-None-Match", meta.getProperty("etag"));
+        }
+        if (meta.getProperty("last-modified") != null) {
+            builder.header("If-Modified-Since", meta.getProperty("last-modified"));
+        }
+
+        try (Response response = ApiService.getInstance().getHttpClient().newCall(builder.build()).execute()) {
+            if (response.code() == 304) {
+                return null;
+            }
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("HTTP " + response.code() + " ao baixar logotipo");
+            }
+
+            byte[] bytes = body.bytes();
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+            if (image == null) {
+                throw new IOException("Formato de imagem não suportado: " + url);
+            }
+
+            Properties newMeta = new Properties();
+            newMeta.setProperty("url", url);
+            if (response.header("ETag") != null) {
+                newMeta.setProperty("etag", response.header("ETag"));
+            }
+            if (response.header("Last-Modified") != null) {
+                newMeta.setProperty("last-modified", response.header("Last-Modified"));
+            }
+            writeToDisk(url, bytes, newMeta);
+            return image;
+        }
+    }
+
+    private BufferedImage readFromDisk(String url) {
+        File file = new File(cacheDir, hash(url) + ".img");
+        if (!file.exists()) {
+            return null;
+        }
+        try (InputStream is = new FileInputStream(file)) {
+            return ImageIO.read(is);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private Properties readMeta(String url) {
+        Properties meta = new Properties();
+        File imageFile = new File(cacheDir, hash(url) + ".img");
+        File metaFile = new File(cacheDir, hash(url) + ".properties");
+        if (imageFile.exists() && metaFile.exists()) {
+            try (InputStream is = new FileInputStream(metaFile)) {
+                meta.load(is);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return meta;
+    }
+
+    private void writeToDisk(String url, byte[] bytes, Properties meta) {
+        String name = hash(url);
+        try {
+            // Grava em arquivo temporário e move, para não deixar cópia parcial no cache
+            File tmp = File.createTempFile(name, ".tmp", cacheDir);
+            Files.write(tmp.toPath(), bytes);
+            Files.move(tmp.toPath(), new File(cacheDir, name + ".img").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            try (OutputStream os = new FileOutputStream(new File(cacheDir, name + ".properties"))) {
+                meta.store(os, "AssinaLegis - logotipo");
+            }
+        } catch (IOException e) {
+            System.err.println("Erro ao gravar logotipo no cache: " + e.getMessage());
+        }
+    }
+
+    private BufferedImage scale(BufferedImage source, int maxWidth, int maxHeight) {
+        double scale = Math.min((double) maxWidth / source.getWidth(), (double) maxHeight / source.getHeight());
+        int width = Math.max(1, (int) (source.getWidth() * scale));
+        int height = Math.max(1, (int) (source.getHeight() * scale));
+
+        BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = result.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.drawImage(source, 0, 0, width, height, null);
+        g2d.dispose();
+        return result;
+    }
+
+    private static String hash(String url) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(url.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void onConfigChanged(String key, Object newValue) {
+        if (ConfigService.KEY_CASA.equals(key) && newValue instanceof JsonNode) {
+            JsonNode casa = (JsonNode) newValue;
+            if (casa.has("logotipo") && !casa.get("logotipo").isNull()) {
+                String url = casa.get("logotipo").asText();
+                if (!url.isEmpty() && !url.equals("null")) {
+                    failures.remove(url);
+                    revalidated.remove(url);
+                    refreshAsync(url);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package br.leg.go.jatai.assinalegis;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Carrega uma lista paginada da API (ex: proposições) publicando os itens em
+ * pequenos lotes à medida que chegam.
+ * <p>
+ * Cada página é analisada em fluxo com o {@link JsonParser} do Jackson: os itens
+ * de {@code results} são convertidos um a um, sem esperar a página inteira. A
+ * paginação segue {@code pagination.next_page} (SAPL) ou o link {@code next}
+ * (DRF), e a página seguinte é requisitada assim que for conhecida, enquanto a
+ * atual ainda está sendo lida e exibida.
+ */
+public class PaginatedListLoader {
+
+    /** Quantidade padrão de itens publicados de cada vez. */
+    public static final int DEFAULT_BATCH_SIZE = 20;
+
+    private final ApiService apiService;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public PaginatedListLoader(ApiService apiService) {
+        this.apiService = apiService;
+    }
+
+    /**
+     * Inicia a carga em segundo plano.
+     *
+     * @param params      Parâmetros da primeira página (filtros, ordenação, page_size)
+     * @param tamanhoLote Itens por chamada de {@code publicar}
+     * @param publicar    Recebe cada lote, na thread da carga
+     * @return Total de itens carregados; cancelar o future interrompe a carga
+     */
+    public CompletableFuture<Integer> carregar(String appLabel, String modelName, Map<String, Object> params,
+                                               int tamanhoLote, Consumer<List<JsonNode>> publicar) {
+        Carga carga = new Carga(appLabel, modelName, params, Math.max(1, tamanhoLote), publicar);
+        Thread thread = new Thread(carga::executar, "lista-" + modelName);
+        thread.setDaemon(true);
+        thread.start();
+        return carga.resultado;
+    }
+
+    /**
+     * Estado de uma carga: a página em leitura e a próxima, já requisitada.
+     */
+    private class Carga {
+        final String appLabel;
+        final String modelName;
+        final Map<String, Object> params;
+        final int tamanhoLote;
+        final Consumer<List<JsonNode>> publicar;
+        final CompletableFuture<Integer> resultado = new CompletableFuture<>();
+
+        volatile Pagina atual;
+        volatile Pagina proxima;
+        int total;
+
+        Carga(String appLabel, String modelName, Map<String, Object> params, int tamanhoLote,
+              Consumer<List<JsonNode>> publicar) {
+            this.appLabel = appLabel;
+            this.modelName = modelName;
+            this.params = params != null ? params : Map.of();
+            this.tamanhoLote = tamanhoLote;
+            this.publicar = publicar;
+
+            // Ao cancelar, fecha o que estiver aberto para desbloquear a leitura
+            resultado.whenComplete((total, erro) -> {
+                if (resultado.isCancelled()) {
+                    descartar(atual);
+                    descartar(proxima);
+                }
+            });
+        }
+
+        void executar() {
+            try {
+                Pagina pagina = abrir(1, null);
+                while (pagina != null && !resultado.isDone()) {
+                    atual = pagina;
+                    proxima = null;
+                    ler(pagina);
+                    pagina = proxima;
+                }
+                if (resultado.isCancelled()) {
+                    descartar(proxima);
+                }
+                resultado.complete(total);
+            } catch (Exception e) {
+                if (!resultado.isDone()) {
+                    e.printStackTrace();
+                    resultado.completeExceptionally(e);
+                }
+            }
+        }
+
+        /**
+         * Requisita uma página pelo número ou, se houver, pelo link {@code next}.
+         */
+        Pagina abrir(int numero, String link) {
+            Pagina pagina = new Pagina(numero);
+            pagina.evento.begin();
+            if (link != null) {
+                pagina.stream = apiService.getStreamAsync(link);
+            } else {
+                Map<String, Object> paramsPagina = new LinkedHashMap<>(params);
+                if (numero > 1) {
+                    paramsPagina.put("page", numero);
+                }
+                pagina.stream = apiService.getStreamAsync(appLabel, modelName, null, null, paramsPagina);
+            }
+            return pagina;
+        }
+
+        void ler(Pagina pagina) throws Exception {
+            InputStream in;
+            try {
+                in = pagina.stream.get();
+            } catch (CancellationException e) {
+                return;
+            } catch (ExecutionException e) {
+                Throwable causa = e.getCause() != null ? e.getCause() : e;
+                registrarErro(pagina, causa);
+                throw causa instanceof Exception ? (Exception) causa : e;
+            }
+
+            List<JsonNode> lote = new ArrayList<>(tamanhoLote);
+            try (in; JsonParser parser = mapper.getFactory().createParser(in)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IOException("Resposta inesperada da API: esperado um objeto JSON.");
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String campo = parser.currentName();
+                    JsonToken valor = parser.nextToken();
+                    if ("results".equals(campo) && valor == JsonToken.START_ARRAY) {
+                        JsonToken token;
+                        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                            if (resultado.isDone()) {
+                                return;
+                            }
+                            if (token != JsonToken.START_OBJECT) {
+                                parser.skipChildren();
+                                continue;
+                            }
+                            lote.add(mapper.readTree(parser));
+                            pagina.itens++;
+                            if (lote.size() >= tamanhoLote) {
+                                publicar(lote);
+                                lote = new ArrayList<>(tamanhoLote);
+                            }
+                        }
+                    } else if ("pagination".equals(campo) && valor == JsonToken.START_OBJECT) {
+                        JsonNode paginacao = mapper.readTree(parser);
+                        JsonNode nextPage = paginacao.path("next_page");
+                        if (nextPage.canConvertToInt()) {
+                            preBuscar(pagina, nextPage.asInt(), null);
+                        }
+                    } else if ("next".equals(campo) && valor == JsonToken.VALUE_STRING) {
+                        String link = parser.getText();
+                        if (!link.isEmpty()) {
+                            preBuscar(pagina, pagina.numero + 1, link);
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } catch (IOException e) {
+                if (resultado.isDone()) {
+                    // Stream fechado pelo cancelamento
+                    return;
+                }
+                registrarErro(pagina, e);
+                throw e;
+            }
+
+            if (!lote.isEmpty()) {
+                publicar(lote);
+            }
+            pagina.evento.itens = pagina.itens;
+            pagina.evento.commit();
+        }
+
+        /**
+         * Requisita a próxima página assim que ela é conhecida (uma única vez).
+         */
+        void preBuscar(Pagina pagina, int numero, String link) {
+            if (proxima != null || numero <= pagina.numero || resultado.isDone()) {
+                return;
+            }
+            proxima = abrir(numero, link);
+        }
+
+        void publicar(List<JsonNode> lote) {
+            total += lote.size();
+            publicar.accept(lote);
+        }
+
+        void registrarErro(Pagina pagina, Throwable erro) {
+            pagina.evento.itens = pagina.itens;
+            pagina.evento.erro = erro.getMessage();
+            pagina.evento.commit();
+            descartar(proxima);
+        }
+    }
+
+    /**
+     * Fecha ou cancela a resposta de uma página, conforme ela já tenha chegado ou não.
+     */
+    private static void descartar(Pagina pagina) {
+        if (pagina == null || pagina.stream == null) {
+            return;
+        }
+        pagina.stream.cancel(true);
+        pagina.stream.thenAccept(in -> {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Nada a fazer: a resposta já está sendo descartada
+            }
+        });
+    }
+
+    private static class Pagina {
+        final int numero;
+        final PipelineEvents.ListaDocumentos evento = new PipelineEvents.ListaDocumentos();
+        CompletableFuture<InputStream> stream;
+        int itens;
+
+        Pagina(int numero) {
+            this.numero = numero;
+            evento.pagina = numero;
+        }
+    }
+}
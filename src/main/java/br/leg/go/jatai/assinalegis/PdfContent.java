@@ -0,0 +1,400 @@
+package br.leg.go.jatai.assinalegis;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Conteúdo imutável de uma versão de um PDF (original ou assinada).
+ * <p>
+ * Os bytes ficam num único buffer somente leitura, compartilhado pelo visualizador,
+ * pela assinatura e pelo envio: cada um lê por uma visão própria (stream, fatia ou
+ * leitura aleatória do PDFBox), sem copiar o conteúdo. O {@link PDDocument} é criado
+ * apenas quando necessário, por {@link #load()}, e deve ser fechado por quem o abriu.
+ * <p>
+ * Documentos acima do limite configurado em {@link ConfigService#getPdfMemoryLimitBytes()}
+ * ficam num arquivo temporário mapeado em memória, fora do heap. Nesse caso o PDFBox
+ * lê o arquivo mapeado e usa arquivo de rascunho para os streams que cria.
+ * <p>
+ * Quem substitui ou descarta uma versão deve chamar {@link #release()}, que apaga o
+ * arquivo temporário na hora. O {@link Cleaner} fica só como garantia para o que
+ * não for liberado. No Windows um arquivo ainda mapeado não pode ser apagado: ele
+ * fica numa lista de pendentes, tentada de novo a cada novo arquivo temporário e no
+ * encerramento.
+ */
+public final class PdfContent {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /** Arquivos temporários que ainda não puderam ser apagados. */
+    private static final Set<Path> PENDING_DELETES = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(PdfContent::retryPendingDeletes, "pdf-temporarios"));
+    }
+
+    private final ByteBuffer buffer;
+    private final Path file;
+    private Cleaner.Cleanable cleanable;
+
+    private PdfContent(ByteBuffer buffer, Path file) {
+        // A fatia começa na posição atual, de modo que capacity() == size()
+        this.buffer = buffer.slice().asReadOnlyBuffer();
+        this.file = file;
+    }
+
+    /**
+     * Usa o array recebido sem copiá-lo; ele não deve ser alterado depois.
+     */
+    public static PdfContent wrap(byte[] bytes) {
+        return new PdfContent(ByteBuffer.wrap(bytes), null);
+    }
+
+    /**
+     * Usa o buffer recebido (da posição ao limite) sem copiá-lo; ele não deve ser alterado depois.
+     */
+    public static PdfContent wrap(ByteBuffer buffer) {
+        return new PdfContent(buffer, null);
+    }
+
+    /**
+     * Lê o stream inteiro para um novo conteúdo, em memória ou, se passar do
+     * limite configurado, gravando direto num arquivo temporário.
+     */
+    public static PdfContent read(InputStream in) throws IOException {
+        ContentOutputStream out = new ContentOutputStream();
+        try {
+            in.transferTo(out);
+            return out.toContent();
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Como {@link #read(InputStream)}, reservando de uma vez o tamanho esperado (ex:
+     * o Content-Length da resposta). Se ele passar do limite de memória, os bytes vão
+     * direto para o arquivo temporário; tamanho desconhecido (negativo) usa o padrão.
+     */
+    public static PdfContent read(InputStream in, long expectedSize) throws IOException {
+        if (expectedSize < 0) {
+            return read(in);
+        }
+        long memoryLimit = ConfigService.getInstance().getPdfMemoryLimitBytes();
+        ContentOutputStream out = expectedSize > memoryLimit
+                ? new ContentOutputStream(0, 0)
+                : new ContentOutputStream((int) expectedSize, memoryLimit);
+        try {
+            in.transferTo(out);
+            return out.toContent();
+        } catch (IOException | RuntimeException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Mapeia o arquivo temporário, que passa a pertencer ao conteúdo e é apagado
+     * por {@link #release()} ou, na falta dela, quando o conteúdo deixa de ser usado.
+     */
+    private static PdfContent mapTempFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("PDF maior que 2 GB não é suportado: " + size + " bytes");
+            }
+            // O mapeamento continua válido depois que o canal é fechado
+            PdfContent content = new PdfContent(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), file);
+            content.cleanable = CLEANER.register(content, () -> deleteQuietly(file));
+            return content;
+        }
+    }
+
+    public int size() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Libera o arquivo temporário, se houver. Pode ser chamado mais de uma vez; o
+     * conteúdo não deve mais ser usado depois.
+     */
+    public void release() {
+        if (cleanable != null) {
+            cleanable.clean();
+        }
+    }
+
+    /**
+     * Indica se o conteúdo está num arquivo mapeado, fora do heap.
+     */
+    public boolean isFileBacked() {
+        return file != null;
+    }
+
+    /**
+     * Visão somente leitura de todo o conteúdo, com posição própria.
+     */
+    public ByteBuffer asByteBuffer() {
+        return buffer.duplicate();
+    }
+
+    /**
+     * Visão somente leitura de um trecho do conteúdo.
+     */
+    public ByteBuffer slice(int offset, int length) {
+        return buffer.slice(offset, length);
+    }
+
+    public byte get(int index) {
+        return buffer.get(index);
+    }
+
+    public InputStream openStream() {
+        return new ByteBufferInputStream(asByteBuffer());
+    }
+
+    public InputStream openStream(int offset, int length) {
+        return new ByteBufferInputStream(slice(offset, length));
+    }
+
+    /**
+     * Leitura aleatória para o PDFBox sobre o próprio buffer (em memória ou mapeado),
+     * sem abrir outro mapeamento do arquivo.
+     */
+    public RandomAccessRead openRandomAccess() throws IOException {
+        return new RandomAccessReadBuffer(asByteBuffer());
+    }
+
+    /**
+     * Analisa o PDF. O documento retornado deve ser fechado após o uso.
+     */
+    public PDDocument load() throws IOException {
+        PipelineEvents.CarregamentoPdf evento = new PipelineEvents.CarregamentoPdf();
+        evento.begin();
+        PDDocument doc;
+        if (file != null) {
+            // Streams criados pelo PDFBox (aparência, salvamento incremental) passam do limite para o disco
+            MemoryUsageSetting scratch = MemoryUsageSetting.setupMixed(ConfigService.getInstance().getPdfMemoryLimitBytes());
+            doc = Loader.loadPDF(openRandomAccess(), scratch.streamCache);
+        } else {
+            doc = Loader.loadPDF(openRandomAccess());
+        }
+        if (evento.shouldCommit()) {
+            evento.bytes = size();
+            evento.paginas = doc.getNumberOfPages();
+            evento.arquivo = file != null;
+            evento.commit();
+        }
+        return doc;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        try (InputStream in = openStream()) {
+            in.transferTo(out);
+        }
+    }
+
+    /**
+     * Apaga o arquivo temporário ou, se não for possível agora (ex: ainda mapeado no
+     * Windows), deixa-o na lista de pendentes.
+     */
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+            PENDING_DELETES.remove(file);
+        } catch (IOException e) {
+            PENDING_DELETES.add(file);
+        }
+    }
+
+    private static void retryPendingDeletes() {
+        for (Path file : PENDING_DELETES) {
+            try {
+                Files.deleteIfExists(file);
+                PENDING_DELETES.remove(file);
+            } catch (IOException e) {
+                // Continua pendente
+            }
+        }
+    }
+
+    /**
+     * Saída que entrega o que foi escrito como {@link PdfContent} sem copiar. Fica
+     * em memória até o limite configurado e, a partir dele, grava num arquivo
+     * temporário. Nada pode ser escrito depois de {@link #toContent()}; se o
+     * conteúdo não for entregue, {@link #close()} descarta o arquivo temporário.
+     */
+    public static class ContentOutputStream extends OutputStream {
+        private final long memoryLimit;
+        private byte[] buf;
+        private int count;
+        private Path file;
+        private OutputStream fileOut;
+        private long fileSize;
+        private boolean closed;
+
+        public ContentOutputStream() {
+            this(64 * 1024);
+        }
+
+        public ContentOutputStream(int initialSize) {
+            this(initialSize, ConfigService.getInstance().getPdfMemoryLimitBytes());
+        }
+
+        public ContentOutputStream(int initialSize, long memoryLimit) {
+            this.memoryLimit = memoryLimit;
+            this.buf = new byte[(int) Math.max(0, Math.min(initialSize, memoryLimit))];
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            checkOpen();
+            if (file == null && (long) count + len > memoryLimit) {
+                spill();
+            }
+            if (file != null) {
+                fileOut.write(b, off, len);
+                fileSize += len;
+                return;
+            }
+            if (count + len > buf.length) {
+                long capacity = Math.max((long) buf.length * 2, (long) count + len);
+                buf = Arrays.copyOf(buf, (int) Math.min(capacity, Math.min(memoryLimit, Integer.MAX_VALUE - 8)));
+            }
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        /**
+         * Passa a gravar num arquivo temporário, levando o que já estava em memória.
+         */
+        private void spill() throws IOException {
+            retryPendingDeletes();
+            file = Files.createTempFile("assinalegis-", ".pdf");
+            fileOut = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+            fileOut.write(buf, 0, count);
+            fileSize = count;
+            buf = null;
+            count = 0;
+        }
+
+        public synchronized long size() {
+            return file != null ? fileSize : count;
+        }
+
+        /**
+         * Sobrescreve um trecho já escrito (ex: inserir o CMS no espaço reservado).
+         */
+        public synchronized void patch(long offset, byte[] data) throws IOException {
+            checkOpen();
+            if (offset < 0 || offset + data.length > size()) {
+                throw new IndexOutOfBoundsException("Trecho fora do conteúdo escrito");
+            }
+            if (file == null) {
+                System.arraycopy(data, 0, buf, (int) offset, data.length);
+                return;
+            }
+            fileOut.flush();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ByteBuffer src = ByteBuffer.wrap(data);
+                long position = offset;
+                while (src.hasRemaining()) {
+                    position += channel.write(src, position);
+                }
+            }
+        }
+
+        public synchronized PdfContent toContent() throws IOException {
+            checkOpen();
+            closed = true;
+            if (file == null) {
+                return new PdfContent(ByteBuffer.wrap(buf, 0, count), null);
+            }
+            fileOut.close();
+            return mapTempFile(file);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            buf = null;
+            if (file != null) {
+                try {
+                    fileOut.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                deleteQuietly(file);
+            }
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("Conteúdo já entregue ou descartado; o buffer não pode mais ser alterado.");
+            }
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package br.leg.go.jatai.assinalegis;
+
+import br.leg.go.jatai.assinalegis.DocumentViewerController.DocumentItem;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Eventos do Java Flight Recorder para cada etapa do fluxo de documentos: busca da
+ * lista, download, carga, renderização, montagem da aparência, CMS, gravação
+ * incremental e envio.
+ *
+ * <p>Com a gravação desligada o custo é desprezível. Para perfilar uma estação:
+ * {@code jcmd <pid> JFR.start name=assinalegis filename=assinalegis.jfr} ou
+ * {@code java -XX:StartFlightRecording=filename=assinalegis.jfr ...}; os eventos
+ * ficam na categoria "AssinaLegis".</p>
+ *
+ * <p>Uso: {@code begin()} antes da etapa, preencher os campos e {@code commit()}
+ * ao final. As etapas de rede registram o evento também em caso de falha, com o
+ * campo {@code erro} preenchido.</p>
+ */
+public final class PipelineEvents {
+
+    private PipelineEvents() {
+    }
+
+    /**
+     * Identificação do documento nos eventos: o id da proposição ou, na falta
+     * dele, o título exibido.
+     */
+    static String documentoId(DocumentItem item) {
+        if (item == null) {
+            return null;
+        }
+        if (item.getJsonData() != null && item.getJsonData().has("id")) {
+            return item.getJsonData().get("id").asText();
+        }
+        return item.getHeader();
+    }
+
+    @Name("br.leg.go.jatai.assinalegis.ListaDocumentos")
+    @Label("Busca da Lista de Documentos")
+    @Category({"AssinaLegis", "Rede"})
+    @Description("Requisição de uma página da lista de proposições na API")
+    public static class ListaDocumentos extends Event {
+        @Label("Página")
+        public int pagina;
+
+        @Label("Itens")
+        public int itens;
+
+        @Label("Erro")
+        public String erro;
+    }
+
+    @Name("br.leg.go.jatai.assinalegis.DownloadPdf")
+    @Label("Download de PDF")
+    @Category({"AssinaLegis", "Rede"})
+    @Description("Conexão e leitura completa do texto original de um documento")
+    public static class DownloadPdf extends Event {
+        @Label("Documento")
+        public String documento;
+
+        @Label("Tamanho")
+        @DataAmount
+        public long bytes;
+
+        @Label("Erro")
+        public String erro;
+    }
+
+    @Name("br.leg.go.jatai.assinalegis.CarregamentoPdf")
+    @Label("Carga de PDF")
+    @Category({"AssinaLegis", "PDF"})
+    @Description("Abertura do documento com Loader.loadPDF")
+    public static class CarregamentoPdf extends Event {
+        @Label("Tamanho")
+        @DataAmount
+        public long bytes;
+
+        @Label("Páginas")
+        public int paginas;
+
+        @Label("Em Arquivo Temporário")
+        public boolean arquivo;
+    }
+
+    @Name("br.leg.go.jatai.assinalegis.RenderizacaoPagina")
+    @Label("Renderização de Página")
+    @Category({"AssinaLegis", "PDF"})
+    @Description("Renderização de uma página no visualizador e conversão para imagem JavaFX")
+    public static class RenderizacaoPagina extends Event {
+        @Label("Documento")
+        public String documento;
+
+        @Label("Página")
+        public int pagina;
+
+        @Label("Páginas")
+        public int paginas;
+
+        @Label("DPI")
+        public float dpi;
+
+        @Label("Memória da Imagem")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("br.leg.go.jatai.assinalegis.AparenciaAssinatura")
+    @Label("Montagem da Assinatura Visível")
+    @Category({"AssinaLegis", "Assinatura"})
+    @Description("Posição e aparência da assinatura visível de um documento")
+    public static class AparenciaAssinatura extends Event {
+        @Label("Documento")
+        public String documento;
+
+        @Label("Páginas")
+        public int paginas;
+
+        @Label("Aparência")
+        public String aparencia;
+    }
+
+    @Name("br.leg.go.jatai.assinalegis.AssinaturaCms")
+    @Label("Assinatura CMS")
+    @Category({"AssinaLegis", "Assinatura"})
+    @Description("Geração do CMS (PKCS#7) sobre o hash do documento")
+    public static class AssinaturaCms extends Event {
+        @Label("Documento")
+        public String documento;
+
+        @Label("Tamanho do CMS")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("br.leg.go.jatai.assinalegis.GravacaoIncremental")
+    @Label("Gravação Incremental")
+    @Category({"AssinaLegis", "Assinatura"})
+    @Description("Gravação incremental do documento e cálculo do hash do intervalo assinado")
+    public static class GravacaoIncremental extends Event {
+        @Label("Documento")
+        public String documento;
+
+        @Label("Tamanho")
+        @DataAmount
+        public long bytes;
+
+        @Label("Páginas")
+        public int paginas;
+    }
+
+    @Name("br.leg.go.jatai.assinalegis.EnvioDocumento")
+    @Label("Envio de Documento")
+    @Category({"AssinaLegis", "Rede"})
+    @Description("Envio multipart do PDF assinado para a API, incluindo a fila e as novas tentativas")
+    public static class EnvioDocumento extends Event {
+        @Label("Documento")
+        public String documento;
+
+        @Label("Tamanho")
+        @DataAmount
+        public long bytes;
+
+        @Label("Tentativas")
+        public int tentativas;
+
+        @Label("Erro")
+        public String erro;
+    }
+}
@@ -0,0 +1,395 @@
+package br.leg.go.jatai.assinalegis;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache das informações de revogação (OCSP e CRL) da cadeia do assinante, usadas
+ * para incluir os dados de validação de longo prazo (DSS) nos PDFs assinados.
+ * <p>
+ * Todos os documentos de um lote compartilham a mesma cadeia, então cada resposta
+ * é obtida uma única vez e reaproveitada até o seu nextUpdate, em memória e em
+ * disco ({@code ~/.assinalegis/cache/revocation}).
+ */
+public class RevocationCache {
+
+    /** Validade usada quando a resposta não informa nextUpdate. */
+    private static final long DEFAULT_VALIDITY_MS = 60 * 60 * 1000;
+
+    private static final MediaType OCSP_REQUEST = MediaType.get("application/ocsp-request");
+
+    private static RevocationCache instance;
+
+    private final Map<String, Entry> ocspResponses = new ConcurrentHashMap<>();
+    private final Map<String, Entry> crls = new ConcurrentHashMap<>();
+    private final File cacheDir;
+
+    private RevocationCache() {
+        this.cacheDir = ConfigService.getInstance().getCacheDir("revocation");
+    }
+
+    public static synchronized RevocationCache getInstance() {
+        if (instance == null) {
+            instance = new RevocationCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Reúne os certificados e as informações de revogação da cadeia. Para cada
+     * certificado (exceto a raiz) tenta o OCSP e, se não houver, as CRLs. Falhas
+     * de rede são registradas e o certificado fica sem informação de revogação.
+     */
+    public RevocationData get(Certificate[] chain) {
+        List<byte[]> certificados = new ArrayList<>();
+        List<byte[]> respostasOcsp = new ArrayList<>();
+        List<byte[]> listasCrl = new ArrayList<>();
+
+        for (int i = 0; i < chain.length; i++) {
+            X509Certificate cert = (X509Certificate) chain[i];
+            try {
+                certificados.add(cert.getEncoded());
+            } catch (CertificateEncodingException e) {
+                e.printStackTrace();
+                continue;
+            }
+
+            X509Certificate issuer = i + 1 < chain.length ? (X509Certificate) chain[i + 1] : null;
+            if (issuer == null && cert.getSubjectX500Principal().equals(cert.getIssuerX500Principal())) {
+                // Raiz autoassinada: não há revogação a consultar
+                continue;
+            }
+
+            byte[] ocsp = issuer != null ? getOcsp(cert, issuer) : null;
+            if (ocsp != null) {
+                respostasOcsp.add(ocsp);
+                continue;
+            }
+            for (String url : getCrlUrls(cert)) {
+                byte[] crl = getCrl(url);
+                if (crl != null) {
+                    listasCrl.add(crl);
+                    break;
+                }
+            }
+        }
+        return new RevocationData(certificados, respostasOcsp, listasCrl);
+    }
+
+    private byte[] getOcsp(X509Certificate cert, X509Certificate issuer) {
+        String url = getOcspUrl(cert);
+        if (url == null) {
+            return null;
+        }
+        String key = fingerprint(cert);
+
+        Entry entry = ocspResponses.get(key);
+        if (entry != null && entry.isValid()) {
+            return entry.encoded();
+        }
+
+        synchronized (ocspResponses) {
+            entry = ocspResponses.get(key);
+            if (entry == null || !entry.isValid()) {
+                // Camada em disco
+                entry = readOcsp(new File(cacheDir, key + ".ocsp"));
+            }
+            if (entry == null || !entry.isValid()) {
+                try {
+                    entry = fetchOcsp(url, cert, issuer);
+                    writeToDisk(new File(cacheDir, key + ".ocsp"), entry.encoded());
+                } catch (Exception e) {
+                    System.err.println("Erro ao consultar OCSP em " + url + ": " + e.getMessage());
+                    return null;
+                }
+            }
+            ocspResponses.put(key, entry);
+            return entry.encoded();
+        }
+    }
+
+    private byte[] getCrl(String url) {
+        Entry entry = crls.get(url);
+        if (entry != null && entry.isValid()) {
+            return entry.encoded();
+        }
+
+        synchronized (crls) {
+            entry = crls.get(url);
+            File file = new File(cacheDir, hash(url) + ".crl");
+            if (entry == null || !entry.isValid()) {
+                entry = readCrl(file);
+            }
+            if (entry == null || !entry.isValid()) {
+                try {
+                    entry = fetchCrl(url);
+                    writeToDisk(file, entry.encoded());
+                } catch (Exception e) {
+                    System.err.println("Erro ao baixar CRL de " + url + ": " + e.getMessage());
+                    return null;
+                }
+            }
+            crls.put(url, entry);
+            return entry.encoded();
+        }
+    }
+
+    private Entry fetchOcsp(String url, X509Certificate cert, X509Certificate issuer) throws Exception {
+        CertificateID id = new CertificateID(
+                new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+                new JcaX509CertificateHolder(issuer), cert.getSerialNumber());
+        OCSPReqBuilder builder = new OCSPReqBuilder();
+        builder.addRequest(id);
+
+        Request request = new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(builder.build().getEncoded(), OCSP_REQUEST))
+                .build();
+        byte[] encoded = execute(request);
+
+        Entry entry = parseOcsp(encoded);
+        if (entry == null) {
+            throw new IOException("Resposta OCSP inválida");
+        }
+        return entry;
+    }
+
+    private Entry fetchCrl(String url) throws Exception {
+        byte[] encoded = execute(new Request.Builder().url(url).build());
+        Entry entry = parseCrl(encoded);
+        if (entry == null) {
+            throw new IOException("CRL inválida");
+        }
+        return entry;
+    }
+
+    private byte[] execute(Request request) throws IOException {
+        try (Response response = ApiService.getInstance().getHttpClient().newCall(request).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("HTTP " + response.code());
+            }
+            return body.bytes();
+        }
+    }
+
+    private Entry readOcsp(File file) {
+        byte[] encoded = readFromDisk(file);
+        return encoded != null ? parseOcsp(encoded) : null;
+    }
+
+    private Entry readCrl(File file) {
+        byte[] encoded = readFromDisk(file);
+        return encoded != null ? parseCrl(encoded) : null;
+    }
+
+    private static Entry parseOcsp(byte[] encoded) {
+        try {
+            OCSPResp response = new OCSPResp(encoded);
+            if (response.getStatus() != OCSPResp.SUCCESSFUL) {
+                System.err.println("OCSP respondeu com status " + response.getStatus());
+                return null;
+            }
+            BasicOCSPResp basic = (BasicOCSPResp) response.getResponseObject();
+            SingleResp single = basic.getResponses()[0];
+            if (single.getCertStatus() instanceof RevokedStatus) {
+                System.err.println("Certificado revogado segundo o OCSP");
+            }
+            return new Entry(encoded, nextUpdate(single.getThisUpdate(), single.getNextUpdate()));
+        } catch (Exception e) {
+            System.err.println("Erro ao interpretar resposta OCSP: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Entry parseCrl(byte[] encoded) {
+        try {
+            X509CRL crl = (X509CRL) CertificateFactory.getInstance("X.509")
+                    .generateCRL(new ByteArrayInputStream(encoded));
+            return new Entry(encoded, nextUpdate(crl.getThisUpdate(), crl.getNextUpdate()));
+        } catch (Exception e) {
+            System.err.println("Erro ao interpretar CRL: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static long nextUpdate(Date thisUpdate, Date nextUpdate) {
+        if (nextUpdate != null) {
+            return nextUpdate.getTime();
+        }
+        long base = thisUpdate != null ? thisUpdate.getTime() : System.currentTimeMillis();
+        return Math.max(base, System.currentTimeMillis()) + DEFAULT_VALIDITY_MS;
+    }
+
+    private static String getOcspUrl(X509Certificate cert) {
+        byte[] value = cert.getExtensionValue(Extension.authorityInfoAccess.getId());
+        if (value == null) {
+            return null;
+        }
+        try {
+            ASN1Primitive primitive = JcaX509ExtensionUtils.parseExtensionValue(value);
+            for (AccessDescription description : AuthorityInformationAccess.getInstance(primitive).getAccessDescriptions()) {
+                GeneralName location = description.getAccessLocation();
+                if (AccessDescription.id_ad_ocsp.equals(description.getAccessMethod())
+                        && location.getTagNo() == GeneralName.uniformResourceIdentifier) {
+                    return location.getName().toString();
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    private static List<String> getCrlUrls(X509Certificate cert) {
+        byte[] value = cert.getExtensionValue(Extension.cRLDistributionPoints.getId());
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        List<String> urls = new ArrayList<>();
+        try {
+            ASN1Primitive primitive = JcaX509ExtensionUtils.parseExtensionValue(value);
+            for (DistributionPoint point : CRLDistPoint.getInstance(primitive).getDistributionPoints()) {
+                DistributionPointName name = point.getDistributionPoint();
+                if (name == null || name.getType() != DistributionPointName.FULL_NAME) {
+                    continue;
+                }
+                for (GeneralName generalName : GeneralNames.getInstance(name.getName()).getNames()) {
+                    if (generalName.getTagNo() == GeneralName.uniformResourceIdentifier) {
+                        String url = generalName.getName().toString();
+                        if (url.startsWith("http")) {
+                            urls.add(url);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return urls;
+    }
+
+    private static byte[] readFromDisk(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void writeToDisk(File file, byte[] bytes) {
+        try {
+            // Grava em arquivo temporário e move, para não deixar cópia parcial no cache
+            File tmp = File.createTempFile(file.getName(), ".tmp", cacheDir);
+            Files.write(tmp.toPath(), bytes);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("Erro ao gravar revogação no cache: " + e.getMessage());
+        }
+    }
+
+    private static String fingerprint(X509Certificate cert) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(cert.getEncoded()));
+        } catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hash(String url) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(url.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Resposta codificada e o instante até o qual pode ser reaproveitada.
+     */
+    private record Entry(byte[] encoded, long nextUpdate) {
+        boolean isValid() {
+            return System.currentTimeMillis() < nextUpdate;
+        }
+    }
+
+    /**
+     * Dados de validação de uma cadeia, já codificados em DER, para o DSS do PDF.
+     */
+    public static class RevocationData {
+        private final List<byte[]> certificates;
+        private final List<byte[]> ocspResponses;
+        private final List<byte[]> crls;
+
+        public RevocationData(List<byte[]> certificates, List<byte[]> ocspResponses, List<byte[]> crls) {
+            this.certificates = List.copyOf(certificates);
+            this.ocspResponses = List.copyOf(ocspResponses);
+            this.crls = List.copyOf(crls);
+        }
+
+        public List<byte[]> getCertificates() { return certificates; }
+        public List<byte[]> getOcspResponses() { return ocspResponses; }
+        public List<byte[]> getCrls() { return crls; }
+
+        /**
+         * Tamanho total dos dados, usado para dimensionar a saída.
+         */
+        public int size() {
+            int total = 0;
+            for (List<byte[]> list : List.of(certificates, ocspResponses, crls)) {
+                for (byte[] bytes : list) {
+                    total += bytes.length;
+                }
+            }
+            return total;
+        }
+    }
+}
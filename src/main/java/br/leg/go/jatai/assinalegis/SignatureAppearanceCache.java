@@ -0,0 +1,107 @@
+package br.leg.go.jatai.assinalegis;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Cache dos modelos de aparência da assinatura visível.
+ * <p>
+ * O modelo contém tudo o que não muda entre documentos de um mesmo lote (fundo,
+ * gradientes, nome da casa, logotipo, assinante e rodapé). Apenas a data/hora é
+ * desenhada por documento. O cache é descartado sempre que as cores ou a Casa
+ * Legislativa são alteradas no {@link ConfigService}.
+ */
+public class SignatureAppearanceCache implements ConfigService.ConfigObserver {
+
+    private static final int MAX_ENTRIES = 16;
+
+    private static SignatureAppearanceCache instance;
+    private final Map<Key, Template> templates = new ConcurrentHashMap<>();
+
+    private SignatureAppearanceCache() {
+    }
+
+    public static synchronized SignatureAppearanceCache getInstance() {
+        if (instance == null) {
+            instance = new SignatureAppearanceCache();
+            ConfigService.getInstance().addObserver(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Retorna o modelo para a chave informada, criando-o uma única vez mesmo quando
+     * vários documentos do lote o solicitam ao mesmo tempo.
+     * <p>
+     * Um modelo provisório (desenhado com o ícone padrão porque o logotipo da casa
+     * não pôde ser obtido) é usado, mas não fica no cache: o próximo documento tenta
+     * o logotipo de novo, respeitando o intervalo entre tentativas do {@link LogoCache}.
+     */
+    public Template get(Key key, Function<Key, Template> builder) {
+        if (templates.size() >= MAX_ENTRIES && !templates.containsKey(key)) {
+            templates.clear();
+        }
+        Template template = templates.computeIfAbsent(key, builder);
+        if (template.isProvisorio()) {
+            templates.remove(key, template);
+        }
+        return template;
+    }
+
+    public void invalidate() {
+        templates.clear();
+    }
+
+    @Override
+    public void onConfigChanged(String key, Object newValue) {
+        if (ConfigService.KEY_CASA.equals(key)
+                || ConfigService.KEY_SIGNATURE_BG_COLOR.equals(key)
+                || ConfigService.KEY_SIGNATURE_NAME_COLOR.equals(key)
+                || ConfigService.KEY_SIGNATURE_DATE_COLOR.equals(key)) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Identifica um modelo: tamanho em pixels, cores, casa e assinante.
+     */
+    public record Key(int width, int height, String bgColor, String nameColor, String dateColor,
+                      String nomeCasa, String logoUrl, String nomeAssinante) {
+    }
+
+    /**
+     * Imagem estática da assinatura e os parâmetros para desenhar a data/hora sobre ela.
+     */
+    public static class Template {
+        private final BufferedImage image;
+        private final Font dateFont;
+        private final Color dateColor;
+        private final int dateX;
+        private final int dateY;
+        private final boolean provisorio;
+
+        /**
+         * @param provisorio Desenhado com o ícone padrão no lugar do logotipo da casa
+         */
+        public Template(BufferedImage image, Font dateFont, Color dateColor, int dateX, int dateY,
+                        boolean provisorio) {
+            this.image = image;
+            this.dateFont = dateFont;
+            this.dateColor = dateColor;
+            this.dateX = dateX;
+            this.dateY = dateY;
+            this.provisorio = provisorio;
+        }
+
+        public BufferedImage getImage() { return image; }
+        public Font getDateFont() { return dateFont; }
+        public Color getDateColor() { return dateColor; }
+        public int getDateX() { return dateX; }
+        public int getDateY() { return dateY; }
+        public boolean isProvisorio() { return provisorio; }
+    }
+}
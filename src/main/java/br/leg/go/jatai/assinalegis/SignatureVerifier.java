@@ -0,0 +1,357 @@
+package br.leg.go.jatai.assinalegis;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cms.CMSSignedDataParser;
+import org.bouncycastle.cms.CMSSignerDigestMismatchException;
+import org.bouncycastle.cms.CMSTypedStream;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.util.Store;
+
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateExpiredException;
+import java.security.cert.CertificateNotYetValidException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verificação das assinaturas de um PDF: intervalo de bytes, hash do conteúdo,
+ * assinatura CMS e cadeia de certificados.
+ * <p>
+ * Documentos diferentes são verificados em paralelo por {@link #verifyAsync(PdfContent)}.
+ * O resultado da cadeia fica em cache por assinante e pelos certificados do CMS
+ * que podem compor a cadeia, já que os documentos de uma mesma sessão costumam ter
+ * os mesmos assinantes com os mesmos intermediários.
+ */
+public class SignatureVerifier {
+
+    private static final Provider BC_PROVIDER = new BouncyCastleProvider();
+
+    private static SignatureVerifier instance;
+
+    private final ExecutorService executor;
+    private final Map<String, StatusCadeia> cadeias = new ConcurrentHashMap<>();
+    private volatile Set<X509Certificate> raizesConfiaveis;
+
+    private SignatureVerifier() {
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "verificacao-" + contador.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static synchronized SignatureVerifier getInstance() {
+        if (instance == null) {
+            instance = new SignatureVerifier();
+        }
+        return instance;
+    }
+
+    /**
+     * Verifica as assinaturas do PDF em segundo plano.
+     */
+    public CompletableFuture<List<ResultadoVerificacao>> verifyAsync(PdfContent pdf) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return verify(pdf);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Verifica todas as assinaturas do PDF, na ordem em que aparecem no documento.
+     */
+    public List<ResultadoVerificacao> verify(PdfContent pdf) throws IOException {
+        List<ResultadoVerificacao> resultados = new ArrayList<>();
+        try (PDDocument doc = pdf.load()) {
+            for (PDSignature signature : doc.getSignatureDictionaries()) {
+                resultados.add(verificarAssinatura(pdf, signature));
+            }
+        }
+        return resultados;
+    }
+
+    private ResultadoVerificacao verificarAssinatura(PdfContent pdf, PDSignature signature) {
+        ResultadoVerificacao resultado = new ResultadoVerificacao(signature.getName(), signature.getSignDate());
+
+        // 1. Intervalo de bytes: dois trechos que cobrem tudo, exceto o valor de /Contents
+        int[] byteRange = signature.getByteRange();
+        if (byteRange == null || byteRange.length != 4 || byteRange[0] != 0
+                || byteRange[1] <= 0 || byteRange[2] <= byteRange[1] || byteRange[3] < 0
+                || (long) byteRange[2] + byteRange[3] > pdf.size()
+                || pdf.get(byteRange[1]) != '<' || pdf.get(byteRange[2] - 1) != '>') {
+            resultado.mensagem = "Intervalo de bytes inválido";
+            return resultado;
+        }
+        resultado.intervaloValido = true;
+        resultado.cobreDocumento = byteRange[2] + byteRange[3] == pdf.size();
+
+        String subFilter = signature.getSubFilter();
+        if (!PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED.getName().equals(subFilter)
+                && !PDSignature.SUBFILTER_ETSI_CADES_DETACHED.getName().equals(subFilter)) {
+            resultado.mensagem = "Formato de assinatura não suportado: " + subFilter;
+            return resultado;
+        }
+
+        // 2. Hash dos trechos e assinatura CMS, lidos em fluxo pelo parser
+        try {
+            InputStream conteudo = new SequenceInputStream(
+                    pdf.openStream(byteRange[0], byteRange[1]),
+                    pdf.openStream(byteRange[2], byteRange[3]));
+            CMSSignedDataParser parser = new CMSSignedDataParser(
+                    new JcaDigestCalculatorProviderBuilder().setProvider(BC_PROVIDER).build(),
+                    new CMSTypedStream(conteudo), signature.getContents());
+            parser.getSignedContent().drain();
+
+            // O Bouncy Castle devolve o Store sem tipo; o CMS só contém certificados X.509
+            @SuppressWarnings("unchecked")
+            Store<X509CertificateHolder> certificados = parser.getCertificates();
+            SignerInformation signer = parser.getSignerInfos().getSigners().iterator().next();
+            @SuppressWarnings("unchecked")
+            Collection<X509CertificateHolder> encontrados = certificados.getMatches(signer.getSID());
+            if (encontrados.isEmpty()) {
+                resultado.mensagem = "Certificado do assinante ausente no CMS";
+                return resultado;
+            }
+
+            JcaX509CertificateConverter converter = new JcaX509CertificateConverter();
+            X509Certificate signerCert = converter.getCertificate(encontrados.iterator().next());
+            resultado.nomeAssinante = SignerContext.extrairNomeAssinante(signerCert);
+
+            if (!signer.verify(new JcaSimpleSignerInfoVerifierBuilder().setProvider(BC_PROVIDER).build(signerCert))) {
+                resultado.mensagem = "Hash ou assinatura CMS não conferem";
+                return resultado;
+            }
+            resultado.assinaturaValida = true;
+
+            // 3. Cadeia de certificados (em cache por assinante e intermediários do CMS)
+            List<X509Certificate> todos = new ArrayList<>();
+            for (X509CertificateHolder holder : certificados.getMatches(null)) {
+                todos.add(converter.getCertificate(holder));
+            }
+            resultado.statusCadeia = cadeias.computeIfAbsent(chaveCadeia(signerCert, todos),
+                    k -> validarCadeia(signerCert, todos));
+
+            if (signature.getSignDate() != null) {
+                signerCert.checkValidity(signature.getSignDate().getTime());
+            }
+            resultado.certificadoNoPrazo = true;
+        } catch (CMSSignerDigestMismatchException e) {
+            resultado.mensagem = "Hash ou assinatura CMS não conferem";
+        } catch (CertificateExpiredException | CertificateNotYetValidException e) {
+            resultado.mensagem = "Certificado fora da validade na data da assinatura";
+        } catch (Exception e) {
+            resultado.mensagem = "Erro ao verificar assinatura: " + e.getMessage();
+        }
+        return resultado;
+    }
+
+    /**
+     * Chave do cache da cadeia: o assinante e os certificados do CMS que podem
+     * compor a cadeia (emissores encontrados pelo nome, nível a nível). Assim um
+     * documento sem algum intermediário não compartilha o resultado com outro, do
+     * mesmo assinante, que traz a cadeia completa.
+     */
+    private static String chaveCadeia(X509Certificate signerCert, List<X509Certificate> certificados) {
+        Set<X509Certificate> usados = new HashSet<>();
+        Deque<X509Certificate> pendentes = new ArrayDeque<>();
+        pendentes.add(signerCert);
+        while (!pendentes.isEmpty()) {
+            X509Certificate cert = pendentes.poll();
+            for (X509Certificate candidato : certificados) {
+                if (candidato.getSubjectX500Principal().equals(cert.getIssuerX500Principal())
+                        && usados.add(candidato)) {
+                    pendentes.add(candidato);
+                }
+            }
+        }
+
+        List<String> emissores = new ArrayList<>();
+        for (X509Certificate cert : usados) {
+            emissores.add(fingerprint(cert));
+        }
+        emissores.sort(null);
+        return fingerprint(signerCert) + ":" + String.join(",", emissores);
+    }
+
+    /**
+     * Monta a cadeia a partir do certificado do assinante com os certificados do
+     * CMS, conferindo a assinatura de cada elo, e verifica se a raiz é confiável.
+     */
+    private StatusCadeia validarCadeia(X509Certificate signerCert, List<X509Certificate> certificados) {
+        X509Certificate atual = signerCert;
+        Set<X509Certificate> visitados = new HashSet<>();
+        while (visitados.add(atual)) {
+            if (isConfiavel(atual)) {
+                return StatusCadeia.CONFIAVEL;
+            }
+            X509Certificate emissor = encontrarEmissor(atual, certificados);
+            if (emissor == null) {
+                emissor = encontrarEmissor(atual, getRaizesConfiaveis());
+            }
+            if (emissor == null) {
+                // Cadeia incompleta ou raiz autoassinada fora do repositório confiável
+                return isAutoassinado(atual) ? StatusCadeia.RAIZ_NAO_CONFIAVEL : StatusCadeia.INCOMPLETA;
+            }
+            try {
+                atual.verify(emissor.getPublicKey());
+            } catch (Exception e) {
+                return StatusCadeia.INVALIDA;
+            }
+            if (emissor.equals(atual)) {
+                return StatusCadeia.RAIZ_NAO_CONFIAVEL;
+            }
+            atual = emissor;
+        }
+        return StatusCadeia.INVALIDA;
+    }
+
+    private static X509Certificate encontrarEmissor(X509Certificate cert, Collection<X509Certificate> candidatos) {
+        for (X509Certificate candidato : candidatos) {
+            if (candidato.getSubjectX500Principal().equals(cert.getIssuerX500Principal())) {
+                try {
+                    cert.verify(candidato.getPublicKey());
+                    return candidato;
+                } catch (Exception e) {
+                    // Mesmo nome, chave diferente: continua procurando
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isAutoassinado(X509Certificate cert) {
+        return cert.getSubjectX500Principal().equals(cert.getIssuerX500Principal());
+    }
+
+    private boolean isConfiavel(X509Certificate cert) {
+        return getRaizesConfiaveis().contains(cert);
+    }
+
+    /**
+     * Certificados confiáveis do Java (cacerts), carregados uma única vez.
+     */
+    private Set<X509Certificate> getRaizesConfiaveis() {
+        Set<X509Certificate> raizes = raizesConfiaveis;
+        if (raizes == null) {
+            raizes = new HashSet<>();
+            try {
+                TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                factory.init((KeyStore) null);
+                for (TrustManager manager : factory.getTrustManagers()) {
+                    if (manager instanceof X509TrustManager) {
+                        raizes.addAll(List.of(((X509TrustManager) manager).getAcceptedIssuers()));
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            raizesConfiaveis = raizes;
+        }
+        return raizes;
+    }
+
+    private static String fingerprint(X509Certificate cert) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(md.digest(cert.getEncoded()));
+        } catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Situação da cadeia de certificados do assinante.
+     */
+    public enum StatusCadeia {
+        /** A cadeia termina num certificado confiável do Java. */
+        CONFIAVEL,
+        /** A cadeia é íntegra, mas a raiz não está no repositório confiável (ex: ICP-Brasil). */
+        RAIZ_NAO_CONFIAVEL,
+        /** Falta algum certificado intermediário para chegar à raiz. */
+        INCOMPLETA,
+        /** Algum elo da cadeia não confere. */
+        INVALIDA
+    }
+
+    /**
+     * Resultado da verificação de uma assinatura do documento.
+     */
+    public static class ResultadoVerificacao {
+        private final String nome;
+        private final Calendar dataAssinatura;
+        private String nomeAssinante;
+        private boolean intervaloValido;
+        private boolean cobreDocumento;
+        private boolean assinaturaValida;
+        private boolean certificadoNoPrazo;
+        private StatusCadeia statusCadeia;
+        private String mensagem;
+
+        ResultadoVerificacao(String nome, Calendar dataAssinatura) {
+            this.nome = nome;
+            this.dataAssinatura = dataAssinatura;
+        }
+
+        public String getNome() { return nome; }
+        public Calendar getDataAssinatura() { return dataAssinatura; }
+        public String getNomeAssinante() { return nomeAssinante; }
+        public boolean isIntervaloValido() { return intervaloValido; }
+        /** Indica se a assinatura cobre o arquivo inteiro (sem atualizações posteriores). */
+        public boolean isCobreDocumento() { return cobreDocumento; }
+        public boolean isAssinaturaValida() { return assinaturaValida; }
+        public boolean isCertificadoNoPrazo() { return certificadoNoPrazo; }
+        public StatusCadeia getStatusCadeia() { return statusCadeia; }
+        public String getMensagem() { return mensagem; }
+
+        /**
+         * Indica se o conteúdo assinado não foi alterado e a assinatura confere com o
+         * certificado, independentemente da confiança na raiz da cadeia.
+         */
+        public boolean isIntegra() {
+            return intervaloValido && assinaturaValida && certificadoNoPrazo
+                    && statusCadeia != StatusCadeia.INVALIDA;
+        }
+
+        @Override
+        public String toString() {
+            return (nomeAssinante != null ? nomeAssinante : nome) + " - "
+                    + (isIntegra() ? "íntegra" : "inválida") + (mensagem != null ? " (" + mensagem + ")" : "")
+                    + (statusCadeia != null ? " [cadeia: " + statusCadeia + "]" : "");
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package br.leg.go.jatai.assinalegis;
+
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cms.CMSAbsentContent;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.jcajce.JcaSignerInfoGeneratorBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DefaultDigestAlgorithmIdentifierFinder;
+import org.bouncycastle.operator.DigestCalculator;
+import org.bouncycastle.operator.DigestCalculatorProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+import javax.security.auth.DestroyFailedException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.Arrays;
+
+/**
+ * Contexto de assinatura de uma sessão: chave privada, cadeia de certificados e os
+ * objetos do Bouncy Castle que não dependem do documento.
+ * <p>
+ * É criado uma vez a partir do KeyStore/alias e reutilizado em todo o lote. Os
+ * objetos mantidos aqui são imutáveis ou sem estado entre chamadas; o que tem
+ * estado (ContentSigner, MessageDigest e gerador CMS) é criado a cada assinatura,
+ * de modo que {@link #sign(InputStream)} pode ser chamado por várias threads ao
+ * mesmo tempo.
+ */
+public class SignerContext {
+
+    /** Algoritmo de assinatura (SHA256 com RSA é padrão ICP-Brasil). */
+    public static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+
+    /** Algoritmo de hash do conteúdo assinado. */
+    public static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /** Tamanho dos blocos lidos ao calcular o hash do conteúdo. */
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+    private static final Provider BC_PROVIDER = new BouncyCastleProvider();
+
+    private final PrivateKey privateKey;
+    private final Certificate[] certificateChain;
+    private final X509Certificate signerCertificate;
+    private final String nomeAssinante;
+    private final JcaCertStore certStore;
+    private final AlgorithmIdentifier digestAlgorithmId;
+    private final JcaContentSignerBuilder contentSignerBuilder;
+
+    private SignerContext(PrivateKey privateKey, Certificate[] certificateChain) throws Exception {
+        this.privateKey = privateKey;
+        this.certificateChain = certificateChain;
+        this.signerCertificate = (X509Certificate) certificateChain[0];
+        this.nomeAssinante = extrairNomeAssinante(signerCertificate);
+
+        // Prepara a cadeia de certificados para o Bouncy Castle
+        this.certStore = new JcaCertStore(Arrays.asList(certificateChain));
+        this.digestAlgorithmId = new DefaultDigestAlgorithmIdentifierFinder().find(DIGEST_ALGORITHM);
+
+        // Chaves RSA de software usam a instância do Bouncy Castle sem pesquisar provedores;
+        // outras (ex: tokens) ficam com o provedor padrão da JCA
+        JcaContentSignerBuilder builder = new JcaContentSignerBuilder(SIGNATURE_ALGORITHM);
+        if (privateKey instanceof RSAPrivateKey) {
+            builder.setProvider(BC_PROVIDER);
+        }
+        this.contentSignerBuilder = builder;
+    }
+
+    /**
+     * Cria o contexto a partir do KeyStore.
+     *
+     * @throws Exception Se a chave privada ou a cadeia não forem encontradas para o alias
+     */
+    public static SignerContext create(KeyStore keyStore, String alias, char[] senha) throws Exception {
+        PrivateKey privateKey = (PrivateKey) keyStore.getKey(alias, senha);
+        Certificate[] certificateChain = keyStore.getCertificateChain(alias);
+
+        if (privateKey == null || certificateChain == null) {
+            throw new Exception("Chave privada ou cadeia de certificados não encontrada para o alias: " + alias);
+        }
+        return new SignerContext(privateKey, certificateChain);
+    }
+
+    /**
+     * Calcula o hash SHA-256 do conteúdo lendo-o em blocos, sem carregá-lo inteiro
+     * na memória.
+     */
+    public byte[] digest(InputStream content) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[DIGEST_BUFFER_SIZE];
+        int read;
+        while ((read = content.read(buffer)) != -1) {
+            md.update(buffer, 0, read);
+        }
+        return md.digest();
+    }
+
+    /**
+     * Gera a assinatura CMS (PKCS#7) destacada a partir do hash já calculado do conteúdo.
+     * <p>
+     * O hash entra no atributo assinado messageDigest por meio de um
+     * DigestCalculator que apenas devolve o valor informado.
+     */
+    public byte[] signDigest(byte[] contentDigest) throws Exception {
+        ContentSigner contentSigner = contentSignerBuilder.build(privateKey);
+
+        DigestCalculatorProvider precomputed = algorithm -> {
+            if (!algorithm.getAlgorithm().equals(digestAlgorithmId.getAlgorithm())) {
+                throw new OperatorCreationException("Algoritmo de hash inesperado: " + algorithm.getAlgorithm());
+            }
+            return new DigestCalculator() {
+                @Override
+                public AlgorithmIdentifier getAlgorithmIdentifier() {
+                    return algorithm;
+                }
+
+                @Override
+                public OutputStream getOutputStream() {
+                    return OutputStream.nullOutputStream();
+                }
+
+                @Override
+                public byte[] getDigest() {
+                    return contentDigest.clone();
+                }
+            };
+        };
+
+        CMSSignedDataGenerator gen = new CMSSignedDataGenerator();
+        gen.addSignerInfoGenerator(new JcaSignerInfoGeneratorBuilder(precomputed)
+                .build(contentSigner, signerCertificate));
+        gen.addCertificates(certStore);
+
+        // false = detached signature (o PDF contém o conteúdo, a assinatura fica separada na estrutura)
+        CMSSignedData signedData = gen.generate(new CMSAbsentContent(), false);
+        return signedData.getEncoded();
+    }
+
+    /**
+     * Gera a assinatura CMS (PKCS#7) destacada do conteúdo, calculando o hash em fluxo.
+     */
+    public byte[] sign(InputStream content) throws Exception {
+        return signDigest(digest(content));
+    }
+
+    /**
+     * Tenta apagar a chave privada da memória. Chaves de provedores que não
+     * implementam {@link javax.security.auth.Destroyable#destroy()} ficam para o
+     * coletor de lixo; o contexto não deve ser usado depois desta chamada.
+     */
+    public void destroy() {
+        if (privateKey.isDestroyed()) {
+            return;
+        }
+        try {
+            privateKey.destroy();
+        } catch (DestroyFailedException e) {
+            // O provedor não permite apagar a chave; basta descartar a referência
+        }
+    }
+
+    public Certificate[] getCertificateChain() {
+        return certificateChain.clone();
+    }
+
+    public X509Certificate getSignerCertificate() {
+        return signerCertificate;
+    }
+
+    public String getNomeAssinante() {
+        return nomeAssinante;
+    }
+
+    /**
+     * Extrai o nome do assinante (CN) do certificado.
+     */
+    static String extrairNomeAssinante(X509Certificate certificate) {
+        try {
+            String subjectDN = certificate.getSubjectX500Principal().getName();
+            javax.naming.ldap.LdapName ln = new javax.naming.ldap.LdapName(subjectDN);
+            for (javax.naming.ldap.Rdn rdn : ln.getRdns()) {
+                if (rdn.getType().equalsIgnoreCase("CN")) {
+                    return rdn.getValue().toString();
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return "";
+    }
+}
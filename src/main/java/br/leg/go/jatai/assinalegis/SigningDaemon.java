@@ -0,0 +1,680 @@
+package br.leg.go.jatai.assinalegis;
+
+import br.leg.go.jatai.assinalegis.DocumentViewerController.DocumentItem;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serviço local de assinatura, que recebe tarefas por uma API HTTP em 127.0.0.1.
+ * <p>
+ * Diferente do {@link HeadlessSigner}, que abre uma JVM por lote, o serviço mantém
+ * carregados entre as tarefas o certificado ({@link SignerContext}), o
+ * {@link ApiService} com seu pool de conexões e o código já compilado pelo JIT.
+ * As tarefas ficam numa fila limitada e são executadas por um número fixo de workers.
+ * <p>
+ * Todas as requisições exigem o cabeçalho {@code Authorization: Bearer <chave>}. A
+ * chave vem da variável {@value #ENV_CHAVE} ou é gerada na partida e gravada em
+ * {@code ~/.assinalegis/daemon.key}, legível apenas pelo usuário.
+ * <ul>
+ *     <li>{@code POST /jobs} com {@code {"proposicoes": [1, 2], "enviar": true, "reassinar": false}}:
+ *     baixa, assina e (por padrão) envia as proposições ainda não enviadas;</li>
+ *     <li>{@code POST /jobs/pdf?nome=...} com o PDF no corpo: assina o PDF, que fica
+ *     disponível em {@code GET /jobs/{id}/pdf} por {@value #VALIDADE_PDF_MINUTOS} minutos;</li>
+ *     <li>{@code GET /jobs} e {@code GET /jobs/{id}}: situação e tempos das tarefas;</li>
+ *     <li>{@code DELETE /jobs/{id}}: cancela uma tarefa que ainda está na fila;</li>
+ *     <li>{@code GET /status}: situação do serviço.</li>
+ * </ul>
+ */
+public class SigningDaemon {
+
+    public static final int PORTA_PADRAO = 8787;
+
+    /** Variável de ambiente com a chave de acesso à API local. */
+    public static final String ENV_CHAVE = "ASSINALEGIS_DAEMON_KEY";
+
+    /** Tarefas concluídas mantidas para consulta; as mais antigas são descartadas. */
+    private static final int MAX_TAREFAS_GUARDADAS = 500;
+
+    private static final int MAX_PROPOSICOES_POR_TAREFA = 1000;
+
+    /** Tempo em que o PDF assinado de uma tarefa fica disponível para download. */
+    private static final long VALIDADE_PDF_MINUTOS = 30;
+
+    public enum StatusTarefa {
+        NA_FILA, EM_EXECUCAO, CONCLUIDA, CONCLUIDA_COM_FALHAS, FALHOU, CANCELADA
+    }
+
+    public enum StatusDocumento {
+        PENDENTE, ASSINADO, ENVIADO, IGNORADO, FALHOU
+    }
+
+    private final HeadlessSigner.Opcoes opcoes;
+    private final SignerContext context;
+    private final AssinaturaService service = new AssinaturaService();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor limpeza;
+    private final Map<String, Tarefa> tarefas = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedDeque<String> ordem = new ConcurrentLinkedDeque<>();
+    private final AtomicLong sequencia = new AtomicLong();
+    private final AtomicLong documentosAssinados = new AtomicLong();
+    private final AtomicLong tarefasConcluidas = new AtomicLong();
+    private final byte[] chave;
+    private final long inicio = System.nanoTime();
+    private HttpServer server;
+
+    public SigningDaemon(HeadlessSigner.Opcoes opcoes, SignerContext context, String chave) {
+        this.opcoes = opcoes;
+        this.context = context;
+        this.chave = chave.getBytes(StandardCharsets.UTF_8);
+
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(opcoes.workers, opcoes.workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(opcoes.fila), r -> {
+                    Thread t = new Thread(r, "daemon-assinatura-" + contador.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.limpeza = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "daemon-limpeza");
+            t.setDaemon(true);
+            return t;
+        });
+        this.limpeza.setRemoveOnCancelPolicy(true);
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        HeadlessSigner.Opcoes opcoes;
+        try {
+            opcoes = HeadlessSigner.Opcoes.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Erro: " + e.getMessage());
+            HeadlessSigner.imprimirUso(System.err);
+            System.exit(HeadlessSigner.EXIT_USO);
+            return;
+        }
+        if (opcoes.ajuda) {
+            HeadlessSigner.imprimirUso(System.out);
+            System.exit(HeadlessSigner.EXIT_OK);
+            return;
+        }
+
+        try {
+            HeadlessSigner.aplicarConfiguracao(opcoes);
+            SignerContext context = HeadlessSigner.criarContexto(opcoes);
+            SigningDaemon daemon = new SigningDaemon(opcoes, context, obterChave());
+            daemon.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop, "daemon-encerramento"));
+            HeadlessSigner.log("Serviço de assinatura de " + context.getNomeAssinante()
+                    + " ouvindo em http://127.0.0.1:" + daemon.getPorta());
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("Erro: " + e.getMessage());
+            System.exit(HeadlessSigner.EXIT_FALHAS);
+        }
+    }
+
+    /**
+     * Chave de acesso da variável de ambiente ou, na falta dela, uma nova chave
+     * aleatória gravada em {@code ~/.assinalegis/daemon.key}.
+     */
+    private static String obterChave() throws IOException {
+        String chave = System.getenv(ENV_CHAVE);
+        if (chave != null && !chave.isBlank()) {
+            return chave.trim();
+        }
+        byte[] aleatorio = new byte[32];
+        new SecureRandom().nextBytes(aleatorio);
+        chave = HexFormat.of().formatHex(aleatorio);
+
+        Path arquivo = new File(new File(System.getProperty("user.home"), ".assinalegis"), "daemon.key").toPath();
+        Files.createDirectories(arquivo.getParent());
+        Files.deleteIfExists(arquivo);
+        try {
+            Files.createFile(arquivo, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            // Sistema sem permissões POSIX (Windows): o arquivo fica no perfil do usuário
+            Files.createFile(arquivo);
+        }
+        Files.writeString(arquivo, chave);
+        HeadlessSigner.log("Chave de acesso gravada em " + arquivo);
+        return chave;
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), opcoes.porta), 0);
+        server.createContext("/", this::atender);
+        server.setExecutor(Executors.newFixedThreadPool(4, r -> {
+            Thread t = new Thread(r, "daemon-http");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+        }
+        executor.shutdown();
+        limpeza.shutdownNow();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPorta() {
+        return server.getAddress().getPort();
+    }
+
+    private void atender(HttpExchange exchange) throws IOException {
+        try {
+            if (!autorizado(exchange)) {
+                responderErro(exchange, 401, "Chave de acesso ausente ou inválida.");
+                return;
+            }
+            String metodo = exchange.getRequestMethod();
+            String[] partes = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+
+            if (partes.length == 1 && partes[0].equals("status") && metodo.equals("GET")) {
+                responder(exchange, 200, status());
+            } else if (partes.length == 1 && partes[0].equals("jobs")) {
+                if (metodo.equals("POST")) {
+                    criarTarefaProposicoes(exchange);
+                } else if (metodo.equals("GET")) {
+                    listarTarefas(exchange);
+                } else {
+                    responderErro(exchange, 405, "Método não suportado.");
+                }
+            } else if (partes.length == 2 && partes[0].equals("jobs") && partes[1].equals("pdf") && metodo.equals("POST")) {
+                criarTarefaPdf(exchange);
+            } else if (partes.length >= 2 && partes[0].equals("jobs")) {
+                Tarefa tarefa = tarefas.get(partes[1]);
+                if (tarefa == null) {
+                    responderErro(exchange, 404, "Tarefa não encontrada.");
+                } else if (partes.length == 2 && metodo.equals("GET")) {
+                    responder(exchange, 200, tarefa.toJson(mapper));
+                } else if (partes.length == 2 && metodo.equals("DELETE")) {
+                    cancelar(exchange, tarefa);
+                } else if (partes.length == 3 && partes[2].equals("pdf") && metodo.equals("GET")) {
+                    enviarPdf(exchange, tarefa);
+                } else {
+                    responderErro(exchange, 405, "Método não suportado.");
+                }
+            } else {
+                responderErro(exchange, 404, "Recurso não encontrado.");
+            }
+        } catch (IllegalArgumentException e) {
+            responderErro(exchange, 400, e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            responderErro(exchange, 500, "Erro interno: " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private boolean autorizado(HttpExchange exchange) {
+        String autorizacao = exchange.getRequestHeaders().getFirst("Authorization");
+        if (autorizacao == null || !autorizacao.startsWith("Bearer ")) {
+            return false;
+        }
+        // Comparação em tempo constante
+        return MessageDigest.isEqual(chave, autorizacao.substring(7).trim().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void criarTarefaProposicoes(HttpExchange exchange) throws IOException {
+        JsonNode corpo;
+        try (InputStream in = exchange.getRequestBody()) {
+            corpo = mapper.readTree(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("JSON inválido: " + e.getMessage());
+        }
+        JsonNode ids = corpo != null ? corpo.path("proposicoes") : null;
+        if (ids == null || !ids.isArray() || ids.isEmpty()) {
+            throw new IllegalArgumentException("Informe a lista \"proposicoes\" com os IDs a assinar.");
+        }
+        if (ids.size() > MAX_PROPOSICOES_POR_TAREFA) {
+            throw new IllegalArgumentException("No máximo " + MAX_PROPOSICOES_POR_TAREFA + " proposições por tarefa.");
+        }
+
+        Tarefa tarefa = new Tarefa(String.valueOf(sequencia.incrementAndGet()), "proposicoes");
+        tarefa.enviar = corpo.path("enviar").asBoolean(true);
+        tarefa.reassinar = corpo.path("reassinar").asBoolean(false);
+        for (JsonNode id : ids) {
+            if (!id.canConvertToInt()) {
+                throw new IllegalArgumentException("ID de proposição inválido: " + id);
+            }
+            tarefa.documentos.add(new Documento(id.asInt(), null));
+        }
+        enfileirar(exchange, tarefa, () -> executarProposicoes(tarefa));
+    }
+
+    private void criarTarefaPdf(HttpExchange exchange) throws IOException {
+        String nome = parametros(exchange).getOrDefault("nome", "documento");
+        PdfContent pdf;
+        try (InputStream in = exchange.getRequestBody()) {
+            pdf = PdfContent.read(in);
+        }
+        if (pdf.size() < 5 || pdf.get(0) != '%' || pdf.get(1) != 'P' || pdf.get(2) != 'D' || pdf.get(3) != 'F') {
+            pdf.release();
+            throw new IllegalArgumentException("O corpo da requisição não é um PDF.");
+        }
+
+        Tarefa tarefa = new Tarefa(String.valueOf(sequencia.incrementAndGet()), "pdf");
+        Documento documento = new Documento(null, nome);
+        tarefa.documentos.add(documento);
+        tarefa.pdfRecebido = pdf;
+        enfileirar(exchange, tarefa, () -> executarPdf(tarefa, documento));
+    }
+
+    private void enfileirar(HttpExchange exchange, Tarefa tarefa, Runnable execucao) throws IOException {
+        try {
+            tarefa.future = executor.submit(() -> executar(tarefa, execucao));
+        } catch (RejectedExecutionException e) {
+            tarefa.liberarConteudo();
+            responderErro(exchange, 503, "Fila de tarefas cheia; tente novamente mais tarde.");
+            return;
+        }
+        tarefas.put(tarefa.id, tarefa);
+        ordem.addLast(tarefa.id);
+        descartarAntigas();
+
+        exchange.getResponseHeaders().set("Location", "/jobs/" + tarefa.id);
+        responder(exchange, 202, tarefa.toJson(mapper));
+    }
+
+    private void executar(Tarefa tarefa, Runnable execucao) {
+        synchronized (tarefa) {
+            if (tarefa.status == StatusTarefa.CANCELADA) {
+                return;
+            }
+            tarefa.inicioNanos = System.nanoTime();
+            tarefa.status = StatusTarefa.EM_EXECUCAO;
+        }
+        try {
+            execucao.run();
+            boolean falhas = tarefa.documentos.stream().anyMatch(d -> d.status == StatusDocumento.FALHOU);
+            tarefa.status = falhas ? StatusTarefa.CONCLUIDA_COM_FALHAS : StatusTarefa.CONCLUIDA;
+        } catch (Exception e) {
+            e.printStackTrace();
+            tarefa.erro = e.getMessage();
+            tarefa.status = StatusTarefa.FALHOU;
+        } finally {
+            tarefa.fimNanos = System.nanoTime();
+            tarefasConcluidas.incrementAndGet();
+            HeadlessSigner.log("Tarefa " + tarefa.id + ": " + tarefa.status + " em " + tarefa.execucaoMillis() + " ms");
+        }
+    }
+
+    /**
+     * Baixa, assina e (se pedido) envia as proposições da tarefa.
+     */
+    private void executarProposicoes(Tarefa tarefa) {
+        List<DocumentItem> itens = new ArrayList<>();
+        Map<DocumentItem, Documento> documentos = new HashMap<>();
+        for (Documento documento : tarefa.documentos) {
+            try {
+                Map<String, Object> params = Map.of("expand", "autor");
+                JsonNode node;
+                try (InputStream response = ApiService.getInstance().get("materia", "proposicao", documento.proposicao, null, params)) {
+                    node = mapper.readTree(response);
+                }
+                DocumentItem item = HeadlessSigner.criarItem(node);
+                documento.titulo = item.getHeader();
+                // Mesmo critério do modo sem interface: não reenvia proposições já enviadas
+                if (!HeadlessSigner.isPendente(node)) {
+                    documento.status = StatusDocumento.IGNORADO;
+                    JsonNode dataEnvio = node.path("data_envio");
+                    documento.observacao = dataEnvio.isNull()
+                            ? "Proposição sem texto original"
+                            : "Proposição já enviada" + (dataEnvio.isTextual() ? " em " + dataEnvio.asText() : "");
+                    continue;
+                }
+                HeadlessSigner.baixarOriginal(item, !tarefa.reassinar);
+                if (HeadlessSigner.jaAssinadoPor(item, context.getNomeAssinante())) {
+                    documento.status = StatusDocumento.IGNORADO;
+                    documento.observacao = "Já assinado por " + context.getNomeAssinante();
+                    item.setOriginalContent(null);
+                    continue;
+                }
+                itens.add(item);
+                documentos.put(item, documento);
+            } catch (Exception e) {
+                e.printStackTrace();
+                documento.falhou(e);
+            }
+        }
+
+        for (AssinaturaService.ResultadoAssinatura resultado : assinar(itens)) {
+            DocumentItem item = resultado.getItem();
+            Documento documento = documentos.get(item);
+            documento.duracaoAssinaturaMillis = resultado.getDuracaoMillis();
+            if (!resultado.isSucesso()) {
+                documento.falhou(resultado.getErro());
+            } else if (tarefa.enviar) {
+                try {
+                    HeadlessSigner.enviarAssinado(item);
+                    documento.status = StatusDocumento.ENVIADO;
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    documento.falhou(e);
+                }
+            } else {
+                documento.status = StatusDocumento.ASSINADO;
+            }
+            item.setOriginalContent(null);
+            item.setSignedContent(null);
+        }
+    }
+
+    private void executarPdf(Tarefa tarefa, Documento documento) {
+        DocumentItem item = new DocumentItem(documento.titulo, "", mapper.createObjectNode());
+        item.setOriginalContent(tarefa.pdfRecebido);
+        tarefa.pdfRecebido = null;
+        try {
+            AssinaturaService.ResultadoAssinatura resultado = assinar(List.of(item)).get(0);
+            documento.duracaoAssinaturaMillis = resultado.getDuracaoMillis();
+            if (resultado.isSucesso()) {
+                documento.status = StatusDocumento.ASSINADO;
+                tarefa.pdfAssinado = item.getSignedContent();
+                tarefa.pdfExpiraEm = Instant.now().plus(VALIDADE_PDF_MINUTOS, ChronoUnit.MINUTES);
+                // O PDF fica em memória (ou em arquivo temporário) só pelo tempo de validade
+                limpeza.schedule(tarefa::expirarPdf, VALIDADE_PDF_MINUTOS, TimeUnit.MINUTES);
+            } else {
+                documento.falhou(resultado.getErro());
+            }
+        } finally {
+            // O PDF recebido pertence ao item a partir daqui; é liberado mesmo se o lote falhar
+            item.setOriginalContent(null);
+        }
+    }
+
+    private List<AssinaturaService.ResultadoAssinatura> assinar(List<DocumentItem> itens) {
+        if (itens.isEmpty()) {
+            return List.of();
+        }
+        try {
+            List<AssinaturaService.ResultadoAssinatura> resultados = service.assinarDocumentos(itens, context);
+            documentosAssinados.addAndGet(resultados.stream().filter(AssinaturaService.ResultadoAssinatura::isSucesso).count());
+            return resultados;
+        } catch (Exception e) {
+            throw new IllegalStateException("Erro no lote de assinatura: " + e.getMessage(), e);
+        }
+    }
+
+    private void cancelar(HttpExchange exchange, Tarefa tarefa) throws IOException {
+        synchronized (tarefa) {
+            if (tarefa.status != StatusTarefa.NA_FILA) {
+                responderErro(exchange, 409, "Só é possível cancelar tarefas que ainda estão na fila.");
+                return;
+            }
+            tarefa.status = StatusTarefa.CANCELADA;
+        }
+        tarefa.future.cancel(false);
+        executor.purge();
+        tarefa.liberarConteudo();
+        responder(exchange, 200, tarefa.toJson(mapper));
+    }
+
+    private void enviarPdf(HttpExchange exchange, Tarefa tarefa) throws IOException {
+        PdfContent pdf = tarefa.pdfAssinado;
+        if (pdf == null) {
+            if (tarefa.pdfExpiraEm != null) {
+                responderErro(exchange, 410, "O PDF assinado ficou disponível por " + VALIDADE_PDF_MINUTOS
+                        + " minutos e já foi descartado; envie o documento novamente.");
+            } else {
+                responderErro(exchange, 404, "A tarefa não tem PDF assinado disponível.");
+            }
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/pdf");
+        exchange.sendResponseHeaders(200, pdf.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            pdf.writeTo(out);
+        }
+    }
+
+    private void listarTarefas(HttpExchange exchange) throws IOException {
+        ArrayNode lista = mapper.createArrayNode();
+        Iterator<String> ids = ordem.descendingIterator();
+        while (ids.hasNext()) {
+            Tarefa tarefa = tarefas.get(ids.next());
+            if (tarefa != null) {
+                lista.add(tarefa.toJson(mapper));
+            }
+        }
+        responder(exchange, 200, lista);
+    }
+
+    private ObjectNode status() {
+        ObjectNode status = mapper.createObjectNode();
+        status.put("assinante", context.getNomeAssinante());
+        status.put("workers", executor.getMaximumPoolSize());
+        status.put("emExecucao", executor.getActiveCount());
+        status.put("naFila", executor.getQueue().size());
+        status.put("capacidadeFila", opcoes.fila);
+        status.put("tarefasConcluidas", tarefasConcluidas.get());
+        status.put("documentosAssinados", documentosAssinados.get());
+        status.put("ativoHaSegundos", (System.nanoTime() - inicio) / 1_000_000_000L);
+        return status;
+    }
+
+    /**
+     * Mantém apenas as {@value #MAX_TAREFAS_GUARDADAS} tarefas mais recentes,
+     * sem descartar as que ainda estão na fila ou em execução.
+     */
+    private void descartarAntigas() {
+        if (ordem.size() <= MAX_TAREFAS_GUARDADAS) {
+            return;
+        }
+        Iterator<String> ids = ordem.iterator();
+        while (ids.hasNext() && ordem.size() > MAX_TAREFAS_GUARDADAS) {
+            String id = ids.next();
+            Tarefa tarefa = tarefas.get(id);
+            if (tarefa == null || tarefa.isFinalizada()) {
+                ids.remove();
+                tarefas.remove(id);
+                if (tarefa != null) {
+                    tarefa.liberarConteudo();
+                }
+            }
+        }
+    }
+
+    private static Map<String, String> parametros(HttpExchange exchange) {
+        Map<String, String> parametros = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return parametros;
+        }
+        for (String par : query.split("&")) {
+            int igual = par.indexOf('=');
+            if (igual > 0) {
+                parametros.put(URLDecoder.decode(par.substring(0, igual), StandardCharsets.UTF_8),
+                        URLDecoder.decode(par.substring(igual + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parametros;
+    }
+
+    private void responder(HttpExchange exchange, int codigo, JsonNode corpo) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(corpo);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(codigo, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void responderErro(HttpExchange exchange, int codigo, String mensagem) throws IOException {
+        ObjectNode erro = mapper.createObjectNode();
+        erro.put("erro", mensagem);
+        responder(exchange, codigo, erro);
+    }
+
+    /**
+     * Uma tarefa recebida pela API e sua situação.
+     */
+    private static class Tarefa {
+        private final String id;
+        private final String tipo;
+        private final Instant criadaEm = Instant.now();
+        private final long criadaNanos = System.nanoTime();
+        private final List<Documento> documentos = new ArrayList<>();
+        private volatile StatusTarefa status = StatusTarefa.NA_FILA;
+        private volatile long inicioNanos;
+        private volatile long fimNanos;
+        private volatile String erro;
+        private volatile PdfContent pdfRecebido;
+        private volatile PdfContent pdfAssinado;
+        private volatile Instant pdfExpiraEm;
+        private boolean enviar;
+        private boolean reassinar;
+        private Future<?> future;
+
+        private Tarefa(String id, String tipo) {
+            this.id = id;
+            this.tipo = tipo;
+        }
+
+        /**
+         * Descarta o PDF assinado ao fim do prazo de download.
+         */
+        private void expirarPdf() {
+            PdfContent pdf = pdfAssinado;
+            pdfAssinado = null;
+            if (pdf != null) {
+                pdf.release();
+            }
+        }
+
+        /**
+         * Libera os PDFs da tarefa (cancelada, recusada ou descartada da lista).
+         */
+        private void liberarConteudo() {
+            PdfContent recebido = pdfRecebido;
+            pdfRecebido = null;
+            if (recebido != null) {
+                recebido.release();
+            }
+            expirarPdf();
+        }
+
+        private boolean isFinalizada() {
+            return status != StatusTarefa.NA_FILA && status != StatusTarefa.EM_EXECUCAO;
+        }
+
+        private long execucaoMillis() {
+            if (inicioNanos == 0) {
+                return 0;
+            }
+            return ((fimNanos != 0 ? fimNanos : System.nanoTime()) - inicioNanos) / 1_000_000;
+        }
+
+        private ObjectNode toJson(ObjectMapper mapper) {
+            ObjectNode json = mapper.createObjectNode();
+            json.put("id", id);
+            json.put("tipo", tipo);
+            json.put("status", status.name());
+            json.put("criadaEm", criadaEm.toString());
+            long fimFila = inicioNanos != 0 ? inicioNanos : (isFinalizada() ? criadaNanos : System.nanoTime());
+            json.put("filaMs", (fimFila - criadaNanos) / 1_000_000);
+            json.put("execucaoMs", execucaoMillis());
+            if (erro != null) {
+                json.put("erro", erro);
+            }
+            if (pdfAssinado != null) {
+                json.put("pdf", "/jobs/" + id + "/pdf");
+            }
+            if (pdfExpiraEm != null) {
+                json.put("pdfExpiraEm", pdfExpiraEm.toString());
+            }
+            ArrayNode lista = json.putArray("documentos");
+            for (Documento documento : documentos) {
+                ObjectNode doc = lista.addObject();
+                if (documento.proposicao != null) {
+                    doc.put("proposicao", documento.proposicao);
+                }
+                if (documento.titulo != null) {
+                    doc.put("titulo", documento.titulo);
+                }
+                doc.put("status", documento.status.name());
+                doc.put("assinaturaMs", documento.duracaoAssinaturaMillis);
+                if (documento.erro != null) {
+                    doc.put("erro", documento.erro);
+                }
+                if (documento.observacao != null) {
+                    doc.put("observacao", documento.observacao);
+                }
+            }
+            return json;
+        }
+    }
+
+    /**
+     * Um documento de uma tarefa.
+     */
+    private static class Documento {
+        private final Integer proposicao;
+        private volatile String titulo;
+        private volatile StatusDocumento status = StatusDocumento.PENDENTE;
+        private volatile String erro;
+        private volatile String observacao;
+        private volatile long duracaoAssinaturaMillis;
+
+        private Documento(Integer proposicao, String titulo) {
+            this.proposicao = proposicao;
+            this.titulo = titulo;
+        }
+
+        private void falhou(Exception e) {
+            status = StatusDocumento.FALHOU;
+            erro = e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package br.leg.go.jatai.assinalegis;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.DERSet;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.cms.AttributeTable;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.cms.CMSException;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.SignerInformationStore;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TSPException;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.bouncycastle.tsp.TimeStampToken;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cliente de carimbo de tempo (RFC 3161).
+ * <p>
+ * As requisições de um lote são enviadas ao mesmo tempo pelo cliente HTTP
+ * compartilhado do {@link ApiService}, reaproveitando as conexões abertas com a
+ * TSA. Assim, carimbar um lote inteiro custa aproximadamente o tempo de uma
+ * única ida e volta, e não uma por documento.
+ */
+public class TimestampClient implements ConfigService.ConfigObserver {
+
+    /** Número máximo de requisições simultâneas à TSA. */
+    private static final int MAX_CONCURRENT_REQUESTS = 16;
+
+    private static final MediaType TIMESTAMP_QUERY = MediaType.get("application/timestamp-query");
+
+    private static TimestampClient instance;
+
+    private final OkHttpClient client;
+    private final SecureRandom random = new SecureRandom();
+    private volatile String tsaUrl;
+
+    /**
+     * Cria um cliente para a TSA informada, derivado do cliente HTTP recebido
+     * (compartilha o pool de conexões, com limite próprio de requisições simultâneas).
+     */
+    public TimestampClient(OkHttpClient baseClient, String tsaUrl) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_CONCURRENT_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_CONCURRENT_REQUESTS);
+        this.client = baseClient.newBuilder()
+                .dispatcher(dispatcher)
+                .callTimeout(60, TimeUnit.SECONDS)
+                .build();
+        this.tsaUrl = tsaUrl;
+    }
+
+    public static synchronized TimestampClient getInstance() {
+        if (instance == null) {
+            ConfigService configService = ConfigService.getInstance();
+            instance = new TimestampClient(ApiService.getInstance().getHttpClient(), configService.getTsaUrl());
+            configService.addObserver(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Indica se há uma TSA configurada.
+     */
+    public boolean isEnabled() {
+        String url = tsaUrl;
+        return url != null && !url.isBlank();
+    }
+
+    /**
+     * Solicita o carimbo de tempo do valor da assinatura contida no CMS e devolve
+     * o CMS com o token no atributo não assinado id-aa-signatureTimeStampToken.
+     */
+    public CompletableFuture<byte[]> timestampSignature(byte[] cms) {
+        CMSSignedData signedData;
+        try {
+            signedData = new CMSSignedData(cms);
+        } catch (CMSException e) {
+            return CompletableFuture.failedFuture(new IOException("CMS inválido para carimbo de tempo", e));
+        }
+        SignerInformation signer = signedData.getSignerInfos().getSigners().iterator().next();
+        return requestTimestamp(signer.getSignature())
+                .thenApply(token -> addTimestamp(signedData, token));
+    }
+
+    /**
+     * Solicita de forma assíncrona o carimbo de tempo do hash SHA-256 dos dados.
+     * O token retornado já foi conferido contra a requisição (hash e nonce).
+     */
+    public CompletableFuture<TimeStampToken> requestTimestamp(byte[] data) {
+        String url = tsaUrl;
+        if (url == null || url.isBlank()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("URL da TSA não configurada."));
+        }
+
+        TimeStampRequest tsRequest;
+        try {
+            byte[] imprint = MessageDigest.getInstance(SignerContext.DIGEST_ALGORITHM).digest(data);
+            TimeStampRequestGenerator generator = new TimeStampRequestGenerator();
+            generator.setCertReq(true);
+            // Nonce aleatório por requisição, conferido na resposta
+            tsRequest = generator.generate(TSPAlgorithms.SHA256, imprint, new BigInteger(64, random));
+        } catch (NoSuchAlgorithmException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        Request request;
+        try {
+            request = new Request.Builder()
+                    .url(url)
+                    .post(RequestBody.create(tsRequest.getEncoded(), TIMESTAMP_QUERY))
+                    .build();
+        } catch (IOException | IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<TimeStampToken> future = new CompletableFuture<>();
+        Call call = client.newCall(request);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (ResponseBody body = response.body()) {
+                    if (!response.isSuccessful() || body == null) {
+                        throw new IOException("TSA respondeu HTTP " + response.code());
+                    }
+                    future.complete(parseResponse(tsRequest, body.bytes()));
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        // Cancelar o futuro cancela a requisição HTTP
+        future.whenComplete((token, erro) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return future;
+    }
+
+    private static TimeStampToken parseResponse(TimeStampRequest request, byte[] encoded) throws IOException {
+        try {
+            TimeStampResponse response = new TimeStampResponse(encoded);
+            response.validate(request);
+            TimeStampToken token = response.getTimeStampToken();
+            if (token == null) {
+                throw new IOException("TSA recusou a requisição: " + response.getStatusString());
+            }
+            return token;
+        } catch (TSPException e) {
+            throw new IOException("Resposta inválida da TSA: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Acrescenta o token ao atributo não assinado do primeiro assinante do CMS.
+     */
+    static byte[] addTimestamp(CMSSignedData signedData, TimeStampToken token) {
+        try {
+            ASN1Primitive tokenAsn1;
+            try (ASN1InputStream in = new ASN1InputStream(token.getEncoded())) {
+                tokenAsn1 = in.readObject();
+            }
+
+            List<SignerInformation> signers = new ArrayList<>(signedData.getSignerInfos().getSigners());
+            SignerInformation signer = signers.get(0);
+
+            AttributeTable unsigned = signer.getUnsignedAttributes();
+            ASN1EncodableVector attributes = unsigned != null ? unsigned.toASN1EncodableVector() : new ASN1EncodableVector();
+            attributes.add(new Attribute(PKCSObjectIdentifiers.id_aa_signatureTimeStampToken, new DERSet(tokenAsn1)));
+
+            signers.set(0, SignerInformation.replaceUnsignedAttributes(signer, new AttributeTable(attributes)));
+            return CMSSignedData.replaceSigners(signedData, new SignerInformationStore(signers)).getEncoded();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void onConfigChanged(String key, Object newValue) {
+        if (ConfigService.KEY_TSA_URL.equals(key)) {
+            tsaUrl = newValue != null ? newValue.toString() : "";
+        }
+    }
+}
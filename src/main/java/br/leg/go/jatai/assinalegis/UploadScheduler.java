@@ -0,0 +1,195 @@
+package br.leg.go.jatai.assinalegis;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Agenda o envio (PATCH) de documentos assinados à API, com até N envios em
+ * andamento ao mesmo tempo.
+ * <p>
+ * Para muitos PDFs pequenos o que pesa é a latência de cada requisição, não a
+ * banda; por isso os envios seguem em paralelo. Falhas transitórias (erro 5xx ou
+ * tempo esgotado) são tentadas de novo até {@link #MAX_TENTATIVAS} vezes, com
+ * espera exponencial sorteada ("full jitter") para não repetir todos ao mesmo
+ * tempo contra um servidor sobrecarregado. Durante a espera a vaga fica livre
+ * para os demais documentos. Reenviar é seguro porque o PATCH apenas substitui o
+ * texto original pelo mesmo arquivo.
+ * <p>
+ * O future de cada envio nunca falha: conclui com um {@link Resultado}, para que
+ * o resumo do lote reúna sucessos e erros.
+ */
+public class UploadScheduler {
+
+    /** Número máximo de tentativas de cada documento, incluindo a primeira. */
+    public static final int MAX_TENTATIVAS = 4;
+
+    private static final long ESPERA_BASE_MS = 500;
+    private static final long ESPERA_MAXIMA_MS = 10_000;
+
+    private static final ScheduledThreadPoolExecutor ESPERAS;
+
+    static {
+        ESPERAS = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "envios");
+            t.setDaemon(true);
+            return t;
+        });
+        ESPERAS.setRemoveOnCancelPolicy(true);
+    }
+
+    private final ApiService apiService;
+    private final int concorrencia;
+    private final Consumer<String> log;
+    private final Deque<Envio> fila = new ArrayDeque<>();
+    private int emAndamento;
+
+    /**
+     * @param log Recebe os avisos de nova tentativa, já terminados em quebra de linha
+     */
+    public UploadScheduler(ApiService apiService, int concorrencia, Consumer<String> log) {
+        this.apiService = apiService;
+        this.concorrencia = Math.max(1, concorrencia);
+        this.log = log;
+    }
+
+    /**
+     * Agenda o PATCH do formulário no registro indicado.
+     *
+     * @return Resultado do envio, depois da última tentativa
+     */
+    public CompletableFuture<Resultado> enviar(String appLabel, String modelName, int id, Map<String, Object> form) {
+        Envio envio = new Envio(appLabel, modelName, id, form);
+        synchronized (this) {
+            fila.addLast(envio);
+        }
+        despachar();
+        return envio.resultado;
+    }
+
+    /**
+     * Inicia os envios da fila enquanto houver vaga.
+     */
+    private void despachar() {
+        List<Envio> iniciar = new ArrayList<>();
+        synchronized (this) {
+            while (emAndamento < concorrencia && !fila.isEmpty()) {
+                emAndamento++;
+                iniciar.add(fila.pollFirst());
+            }
+        }
+        for (Envio envio : iniciar) {
+            envio.tentativas++;
+            apiService.patchAsync(envio.appLabel, envio.modelName, envio.id, null, envio.form, null)
+                    .whenComplete((resposta, erro) -> concluirTentativa(envio, erro));
+        }
+    }
+
+    private void concluirTentativa(Envio envio, Throwable erro) {
+        Throwable causa = erro instanceof CompletionException && erro.getCause() != null ? erro.getCause() : erro;
+        synchronized (this) {
+            emAndamento--;
+        }
+
+        if (causa != null && envio.tentativas < MAX_TENTATIVAS && isTransitoria(causa)) {
+            long espera = calcularEspera(envio.tentativas);
+            log.accept("Falha transitória ao enviar o documento " + envio.id + " (" + causa.getMessage()
+                    + "); nova tentativa em " + espera + " ms.\n");
+            ESPERAS.schedule(() -> {
+                // Volta na frente da fila, para não esperar o lote inteiro
+                synchronized (this) {
+                    fila.addFirst(envio);
+                }
+                despachar();
+            }, espera, TimeUnit.MILLISECONDS);
+        } else {
+            envio.resultado.complete(new Resultado(envio.id, envio.tentativas, causa,
+                    System.nanoTime() - envio.inicio));
+        }
+        despachar();
+    }
+
+    /**
+     * Erros do servidor (5xx) e tempo esgotado na conexão ou na leitura valem nova
+     * tentativa; erros do cliente (4xx) e falhas de rede restantes, não.
+     */
+    static boolean isTransitoria(Throwable erro) {
+        if (erro instanceof ApiService.ApiException) {
+            return ((ApiService.ApiException) erro).getStatus() >= 500;
+        }
+        return erro instanceof InterruptedIOException;
+    }
+
+    /**
+     * Espera sorteada entre zero e o dobro da anterior, até o máximo.
+     */
+    static long calcularEspera(int tentativas) {
+        long limite = Math.min(ESPERA_MAXIMA_MS, ESPERA_BASE_MS << Math.min(tentativas - 1, 16));
+        return ThreadLocalRandom.current().nextLong(limite + 1);
+    }
+
+    private static class Envio {
+        final String appLabel;
+        final String modelName;
+        final int id;
+        final Map<String, Object> form;
+        final long inicio = System.nanoTime();
+        final CompletableFuture<Resultado> resultado = new CompletableFuture<>();
+        int tentativas;
+
+        Envio(String appLabel, String modelName, int id, Map<String, Object> form) {
+            this.appLabel = appLabel;
+            this.modelName = modelName;
+            this.id = id;
+            this.form = form;
+        }
+    }
+
+    /**
+     * Resultado do envio de um documento.
+     */
+    public static class Resultado {
+        private final int id;
+        private final int tentativas;
+        private final Throwable erro;
+        private final long duracaoNanos;
+
+        Resultado(int id, int tentativas, Throwable erro, long duracaoNanos) {
+            this.id = id;
+            this.tentativas = tentativas;
+            this.erro = erro;
+            this.duracaoNanos = duracaoNanos;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public boolean isSucesso() {
+            return erro == null;
+        }
+
+        public int getTentativas() {
+            return tentativas;
+        }
+
+        /** Erro da última tentativa, ou null se o envio deu certo. */
+        public Throwable getErro() {
+            return erro;
+        }
+
+        /** Tempo desde o agendamento, incluindo a fila e as esperas entre tentativas. */
+        public long getDuracaoNanos() {
+            return duracaoNanos;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package br.leg.go.jatai.assinalegis;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDFormContentStream;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.common.function.PDFunctionType2;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.shading.PDShading;
+import org.apache.pdfbox.pdmodel.graphics.shading.PDShadingType2;
+import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceDictionary;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceStream;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDSignatureField;
+import org.apache.pdfbox.util.Matrix;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Aparência vetorial da assinatura visível.
+ * <p>
+ * Em vez de rasterizar a assinatura a 300 DPI, monta o widget como um Form XObject:
+ * texto com fonte embutida (subconjunto), retângulo arredondado e gradientes
+ * vetoriais, e o logotipo como um único image XObject. O layout reproduz o da
+ * aparência rasterizada de {@link AssinaturaService}; as medidas abaixo estão em
+ * pixels de 300 DPI, convertidos para pontos por uma transformação no início do
+ * stream.
+ */
+public class VectorSignatureAppearance {
+
+    private static final int DPI = 300;
+
+    /** Fontes procuradas no sistema, em ordem de preferência. */
+    private static final String[] FONT_FILES = {
+            "LiberationSansNarrow-Bold.ttf",
+            "LiberationSans-Bold.ttf",
+            "arialnb.ttf",
+            "arialbd.ttf",
+            "DejaVuSansCondensed-Bold.ttf",
+            "DejaVuSans-Bold.ttf"
+    };
+
+    private static final String[] FONT_DIRS = {
+            "/usr/share/fonts",
+            "/usr/local/share/fonts",
+            System.getProperty("user.home") + "/.fonts",
+            System.getProperty("user.home") + "/.local/share/fonts",
+            "/Library/Fonts",
+            "/System/Library/Fonts",
+            System.getenv("WINDIR") != null ? System.getenv("WINDIR") + "\\Fonts" : "C:\\Windows\\Fonts"
+    };
+
+    private static volatile File fontFile;
+    private static volatile boolean fontSearched = false;
+
+    /**
+     * Cria o documento modelo com o campo de assinatura e sua aparência, no formato
+     * esperado por {@code SignatureOptions.setVisualSignature(InputStream)}.
+     *
+     * @param srcDoc        Documento que será assinado
+     * @param pageIndex     Página (0-based) onde a assinatura ficará
+     * @param rect          Retângulo do widget em coordenadas PDF (origem inferior esquerda)
+     * @param casa          Casa Legislativa (nome e logotipo)
+     * @param nomeAssinante Nome do titular do certificado
+     */
+    public InputStream createVisualSignatureTemplate(PDDocument srcDoc, int pageIndex, PDRectangle rect,
+                                                     JsonNode casa, String nomeAssinante) throws IOException {
+        try (PDDocument doc = new PDDocument();
+             ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+
+            PDPage page = new PDPage(srcDoc.getPage(pageIndex).getMediaBox());
+            doc.addPage(page);
+
+            PDAcroForm acroForm = new PDAcroForm(doc);
+            doc.getDocumentCatalog().setAcroForm(acroForm);
+            PDSignatureField signatureField = new PDSignatureField(acroForm);
+            signatureField.setPartialName("signature");
+            PDAnnotationWidget widget = signatureField.getWidgets().get(0);
+            acroForm.setSignaturesExist(true);
+            acroForm.setAppendOnly(true);
+            acroForm.getCOSObject().setDirect(true);
+            acroForm.getFields().add(signatureField);
+            widget.setRectangle(rect);
+
+            PDFormXObject form = new PDFormXObject(new PDStream(doc));
+            form.setResources(new PDResources());
+            form.setFormType(1);
+            form.setBBox(new PDRectangle(rect.getWidth(), rect.getHeight()));
+
+            PDAppearanceDictionary appearance = new PDAppearanceDictionary();
+            appearance.getCOSObject().setDirect(true);
+            PDAppearanceStream appearanceStream = new PDAppearanceStream(form.getCOSObject());
+            appearance.setNormalAppearance(appearanceStream);
+            widget.setAppearance(appearance);
+
+            try (PDPageContentStream cs = new PDPageContentStream(doc, appearanceStream)) {
+                draw(doc, cs, rect.getWidth(), rect.getHeight(), casa, nomeAssinante);
+            }
+
+            doc.save(baos);
+            return new ByteArrayInputStream(baos.toByteArray());
+        }
+    }
+
+    private void draw(PDDocument doc, PDPageContentStream cs, float widthPoints, float heightPoints,
+                      JsonNode casa, String nomeAssinante) throws IOException {
+        int width = Math.round(widthPoints / 72f * DPI);
+        int height = Math.round(heightPoints / 72f * DPI);
+
+        // Passa a desenhar em pixels de 300 DPI com origem no canto superior esquerdo
+        float scale = 72f / DPI;
+        cs.transform(new Matrix(scale, 0, 0, -scale, 0, heightPoints));
+
+        ConfigService configService = ConfigService.getInstance();
+        Color bgColor = Color.decode(configService.getSignatureBgColor());
+        Color nameColor = Color.decode(configService.getSignatureNameColor());
+        Color dateColor = Color.decode(configService.getSignatureDateColor());
+
+        PDFont font = loadFont(doc);
+
+        // Fundo com bordas arredondadas; o mesmo caminho serve de clip para os gradientes
+        cs.saveGraphicsState();
+        addRoundedRect(cs, width, height, 20);
+        cs.setNonStrokingColor(bgColor);
+        cs.fill();
+
+        addRoundedRect(cs, width, height, 20);
+        cs.clip();
+        fillWhiteGradient(doc, cs, 0, 0, width, height, -210, 80);
+        fillWhiteGradient(doc, cs, 0, (int) (height * 0.7), width, (int) (height * 0.7), 30, 80);
+        cs.restoreGraphicsState();
+
+        // Nome da casa (canto superior direito)
+        String nomeCasa = "Câmara Municipal";
+        if (casa != null && casa.has("nome")) {
+            nomeCasa = casa.get("nome").asText();
+        }
+        float fontSize = fitFontSize(font, nomeCasa, height / 3, (int) (width * 0.65));
+        drawText(cs, font, fontSize, nameColor, nomeCasa,
+                width - stringWidth(font, fontSize, nomeCasa) - 10, ascent(font, fontSize));
+
+        // Nome do assinante
+        if (nomeAssinante == null) nomeAssinante = "";
+        if (nomeAssinante.contains(":")) {
+            nomeAssinante = nomeAssinante.split(":")[0];
+        }
+        nomeAssinante = nomeAssinante.toUpperCase();
+        fontSize = fitFontSize(font, nomeAssinante, height / 3, (int) (width * 0.7));
+        float yText = (int) (height / 2 - lineHeight(font, fontSize) * 1.3) + ascent(font, fontSize);
+        drawText(cs, font, fontSize, nameColor, nomeAssinante, 10, yText);
+
+        // Data/hora
+        String dataHora = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy 'às' HH:mm"));
+        float dateFontSize = (int) (fontSize * 0.9);
+        drawText(cs, font, dateFontSize, dateColor, dataHora, 40, (int) (height + lineHeight(font, dateFontSize)) / 2);
+
+        // Rodapé
+        float footerHeight = lineHeight(font, 20);
+        drawText(cs, font, 20, dateColor, "ASSINATURA QUALIFICADA ICP-BRASIL", 20, (int) (height * 0.68) + footerHeight);
+        drawText(cs, font, 20, nameColor, "Validação disponível em: https://validar.iti.gov.br", 20, (int) (height - footerHeight / 2.4));
+
+        // Logotipo à direita
+        double maxIconWidth = width * 0.27;
+        double maxIconHeight = height * 0.85;
+        String logoUrl = null;
+        if (casa != null && casa.has("logotipo") && !casa.get("logotipo").isNull() && !casa.get("logotipo").asText().equals("null")) {
+            logoUrl = casa.get("logotipo").asText();
+        }
+        BufferedImage icon = LogoCache.getInstance().getLogo(logoUrl, (int) maxIconWidth, (int) maxIconHeight);
+        if (icon == null) {
+            icon = LogoCache.getInstance().getDefaultLogo((int) maxIconWidth, (int) maxIconHeight);
+        }
+        if (icon != null) {
+            double iconScale = Math.min(maxIconWidth / icon.getWidth(), maxIconHeight / icon.getHeight());
+            int iconWidth = (int) (icon.getWidth() * iconScale);
+            int iconHeight = (int) (icon.getHeight() * iconScale);
+            int yPos = (height - iconHeight) - 10;
+            int areaWidth = (int) (width * 0.3);
+            int areaStart = width - areaWidth - 10;
+            int xPos = areaStart + (areaWidth - iconWidth);
+
+            PDImageXObject image = LosslessFactory.createFromImage(doc, icon);
+            // Altura negativa compensa a inversão do eixo Y
+            cs.drawImage(image, new Matrix(iconWidth, 0, 0, -iconHeight, xPos, yPos + iconHeight));
+        }
+    }
+
+    private void drawText(PDPageContentStream cs, PDFont font, float fontSize, Color color,
+                          String text, float x, float y) throws IOException {
+        cs.beginText();
+        cs.setNonStrokingColor(color);
+        cs.setFont(font, fontSize);
+        // Inverte o eixo Y do texto para compensar a transformação do stream
+        cs.setTextMatrix(new Matrix(1, 0, 0, -1, x, y));
+        cs.showText(text);
+        cs.endText();
+    }
+
+    private void addRoundedRect(PDPageContentStream cs, float width, float height, float radius) throws IOException {
+        float k = radius * 0.5523f;
+        cs.moveTo(radius, 0);
+        cs.lineTo(width - radius, 0);
+        cs.curveTo(width - radius + k, 0, width, radius - k, width, radius);
+        cs.lineTo(width, height - radius);
+        cs.curveTo(width, height - radius + k, width - radius + k, height, width - radius, height);
+        cs.lineTo(radius, height);
+        cs.curveTo(radius - k, height, 0, height - radius + k, 0, height - radius);
+        cs.lineTo(0, radius);
+        cs.curveTo(0, radius - k, radius - k, 0, radius, 0);
+        cs.closePath();
+    }
+
+    /**
+     * Pinta um gradiente de branco transparente até branco com opacidade maxAlpha,
+     * no mesmo sentido de {@code drawRotatedGradient}. A opacidade variável é obtida
+     * com uma máscara suave (luminosidade) contendo um sombreamento axial em cinza.
+     */
+    private void fillWhiteGradient(PDDocument doc, PDPageContentStream cs, float x, float y, float width, float height,
+                                   double rotationDegrees, int maxAlpha) throws IOException {
+        double cx = x + width / 2.0;
+        double cy = y + height / 2.0;
+        double rad = Math.toRadians(rotationDegrees);
+        double cos = Math.cos(rad);
+        double sin = Math.sin(rad);
+
+        double minProj = Double.MAX_VALUE;
+        double maxProj = -Double.MAX_VALUE;
+        double[][] corners = {{x, y}, {x + width, y}, {x + width, y + height}, {x, y + height}};
+        for (double[] corner : corners) {
+            double proj = (corner[0] - cx) * cos + (corner[1] - cy) * sin;
+            if (proj < minProj) minProj = proj;
+            if (proj > maxProj) maxProj = proj;
+        }
+
+        COSDictionary functionDict = new COSDictionary();
+        functionDict.setInt(COSName.FUNCTION_TYPE, 2);
+        functionDict.setItem(COSName.DOMAIN, floatArray(0, 1));
+        functionDict.setItem(COSName.C0, floatArray(0));
+        functionDict.setItem(COSName.C1, floatArray(maxAlpha / 255f));
+        functionDict.setInt(COSName.N, 1);
+
+        PDShadingType2 shading = new PDShadingType2(new COSDictionary());
+        shading.setShadingType(PDShading.SHADING_TYPE2);
+        shading.setColorSpace(PDDeviceGray.INSTANCE);
+        shading.setCoords(floatArray((float) (cx + minProj * cos), (float) (cy + minProj * sin),
+                (float) (cx + maxProj * cos), (float) (cy + maxProj * sin)));
+        shading.setFunction(new PDFunctionType2(functionDict));
+        COSArray extend = new COSArray();
+        extend.add(COSBoolean.TRUE);
+        extend.add(COSBoolean.TRUE);
+        shading.setExtend(extend);
+
+        PDFormXObject mask = new PDFormXObject(doc);
+        mask.setBBox(new PDRectangle(x, y, width, height));
+        mask.setResources(new PDResources());
+        COSDictionary group = new COSDictionary();
+        group.setItem(COSName.S, COSName.TRANSPARENCY);
+        group.setItem(COSName.CS, COSName.DEVICEGRAY);
+        mask.getCOSObject().setItem(COSName.GROUP, group);
+        try (PDFormContentStream maskStream = new PDFormContentStream(mask)) {
+            maskStream.shadingFill(shading);
+        }
+
+        COSDictionary softMask = new COSDictionary();
+        softMask.setItem(COSName.TYPE, COSName.MASK);
+        softMask.setItem(COSName.S, COSName.LUMINOSITY);
+        softMask.setItem(COSName.G, mask.getCOSObject());
+        PDExtendedGraphicsState gs = new PDExtendedGraphicsState();
+        gs.getCOSObject().setItem(COSName.SMASK, softMask);
+
+        cs.saveGraphicsState();
+        cs.setGraphicsStateParameters(gs);
+        cs.setNonStrokingColor(Color.WHITE);
+        cs.addRect(x, y, width, height);
+        cs.fill();
+        cs.restoreGraphicsState();
+    }
+
+    private static COSArray floatArray(float... values) {
+        COSArray array = new COSArray();
+        for (float value : values) {
+            if (value == (int) value) {
+                array.add(COSInteger.get((int) value));
+            } else {
+                array.add(new COSFloat(value));
+            }
+        }
+        return array;
+    }
+
+    private float fitFontSize(PDFont font, String text, int startSize, int maxWidth) throws IOException {
+        float textWidth = stringWidth(font, startSize, text);
+        if (textWidth <= maxWidth || startSize <= 5) {
+            return startSize;
+        }
+        // A largura é proporcional ao tamanho, então o ajuste é direto
+        return Math.max(5, (int) (startSize * maxWidth / textWidth));
+    }
+
+    private float stringWidth(PDFont font, float fontSize, String text) throws IOException {
+        return font.getStringWidth(text) / 1000f * fontSize;
+    }
+
+    private float ascent(PDFont font, float fontSize) {
+        return font.getFontDescriptor().getAscent() / 1000f * fontSize;
+    }
+
+    private float lineHeight(PDFont font, float fontSize) {
+        return (font.getFontDescriptor().getAscent() - font.getFontDescriptor().getDescent()) / 1000f * fontSize;
+    }
+
+    /**
+     * Carrega a fonte a ser embutida (subconjunto). Se nenhuma fonte TrueType
+     * conhecida for encontrada, usa a Helvetica Bold padrão do PDF.
+     */
+    private PDFont loadFont(PDDocument doc) throws IOException {
+        File file = findFontFile();
+        if (file != null) {
+            try {
+                return PDType0Font.load(doc, file);
+            } catch (IOException e) {
+                System.err.println("Erro ao carregar fonte " + file + ": " + e.getMessage());
+            }
+        }
+        return new PDType1Font(Standard14Fonts.FontName.HELVETICA_BOLD);
+    }
+
+    private static File findFontFile() {
+        if (!fontSearched) {
+            synchronized (VectorSignatureAppearance.class) {
+                if (!fontSearched) {
+                    for (String name : FONT_FILES) {
+                        for (String dir : FONT_DIRS) {
+                            File found = findFile(new File(dir), name, 4);
+                            if (found != null) {
+                                fontFile = found;
+                                break;
+                            }
+                        }
+                        if (fontFile != null) break;
+                    }
+                    fontSearched = true;
+                }
+            }
+        }
+        return fontFile;
+    }
+
+    private static File findFile(File dir, String name, int depth) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return null;
+        }
+        for (File file : files) {
+            if (file.isFile() && file.getName().equalsIgnoreCase(name)) {
+                return file;
+            }
+        }
+        if (depth > 0) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    File found = findFile(file, name, depth - 1);
+                    if (found != null) {
+                        return found;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
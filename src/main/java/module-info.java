@@ -12,6 +12,8 @@ module br.leg.go.jatai.assinalegis {
     requires java.prefs;
     requires java.naming;
     requires java.net.http;
+    requires jdk.httpserver;
+    requires jdk.jfr;
     requires transitive com.fasterxml.jackson.databind;
     requires com.fasterxml.jackson.core;
     requires okhttp3;
@@ -0,0 +1,117 @@
+package br.leg.go.jatai.assinalegis;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.digitalsignature.PDSignature;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.CMSProcessableByteArray;
+import org.bouncycastle.cms.CMSSignedDataGenerator;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes da verificação de assinaturas com cadeias montadas a partir do CMS.
+ */
+class SignatureVerifierTest {
+
+    private static KeyPair chaveAssinante;
+    private static X509Certificate raiz;
+    private static X509Certificate intermediario;
+    private static X509Certificate assinante;
+
+    @BeforeAll
+    static void criarCadeia() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair chaveRaiz = generator.generateKeyPair();
+        KeyPair chaveIntermediario = generator.generateKeyPair();
+        chaveAssinante = generator.generateKeyPair();
+
+        raiz = emitir("CN=RAIZ DE TESTE", chaveRaiz.getPublic(), "CN=RAIZ DE TESTE", chaveRaiz.getPrivate(), true, 1);
+        intermediario = emitir("CN=AC INTERMEDIARIA DE TESTE", chaveIntermediario.getPublic(),
+                "CN=RAIZ DE TESTE", chaveRaiz.getPrivate(), true, 2);
+        assinante = emitir("CN=ASSINANTE DE TESTE:12345678900", chaveAssinante.getPublic(),
+                "CN=AC INTERMEDIARIA DE TESTE", chaveIntermediario.getPrivate(), false, 3);
+    }
+
+    @Test
+    void testCadeiaDependeDosCertificadosDeCadaDocumento() throws Exception {
+        PdfContent semIntermediario = PdfContent.wrap(assinarPdf(List.of(assinante, raiz)));
+        PdfContent completo = PdfContent.wrap(assinarPdf(List.of(assinante, intermediario, raiz)));
+        SignatureVerifier verifier = SignatureVerifier.getInstance();
+
+        // O resultado do primeiro documento não pode valer para o segundo, nem o contrário
+        assertEquals(SignatureVerifier.StatusCadeia.INCOMPLETA, status(verifier, semIntermediario));
+        assertEquals(SignatureVerifier.StatusCadeia.RAIZ_NAO_CONFIAVEL, status(verifier, completo));
+        assertEquals(SignatureVerifier.StatusCadeia.INCOMPLETA, status(verifier, semIntermediario));
+    }
+
+    private static SignatureVerifier.StatusCadeia status(SignatureVerifier verifier, PdfContent pdf) throws Exception {
+        List<SignatureVerifier.ResultadoVerificacao> resultados = verifier.verify(pdf);
+        assertEquals(1, resultados.size());
+        assertTrue(resultados.get(0).isAssinaturaValida(), resultados.get(0).toString());
+        return resultados.get(0).getStatusCadeia();
+    }
+
+    private static byte[] assinarPdf(List<X509Certificate> certificados) throws Exception {
+        ByteArrayOutputStream original = new ByteArrayOutputStream();
+        try (PDDocument doc = new PDDocument()) {
+            doc.addPage(new PDPage());
+            doc.save(original);
+        }
+
+        ByteArrayOutputStream assinado = new ByteArrayOutputStream();
+        try (PDDocument doc = Loader.loadPDF(original.toByteArray())) {
+            PDSignature signature = new PDSignature();
+            signature.setFilter(PDSignature.FILTER_ADOBE_PPKLITE);
+            signature.setSubFilter(PDSignature.SUBFILTER_ADBE_PKCS7_DETACHED);
+            signature.setSignDate(Calendar.getInstance());
+            doc.addSignature(signature, content -> {
+                try {
+                    CMSSignedDataGenerator generator = new CMSSignedDataGenerator();
+                    generator.addSignerInfoGenerator(new JcaSimpleSignerInfoGeneratorBuilder()
+                            .build("SHA256withRSA", chaveAssinante.getPrivate(), assinante));
+                    generator.addCertificates(new JcaCertStore(certificados));
+                    return generator.generate(new CMSProcessableByteArray(content.readAllBytes()), false).getEncoded();
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            });
+            doc.saveIncremental(assinado);
+        }
+        return assinado.toByteArray();
+    }
+
+    private static X509Certificate emitir(String nome, PublicKey chave, String emissor, PrivateKey chaveEmissor,
+                                          boolean ac, long serial) throws Exception {
+        Date inicio = new Date(System.currentTimeMillis() - 86_400_000);
+        Date fim = new Date(System.currentTimeMillis() + 86_400_000);
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                new X500Name(emissor), BigInteger.valueOf(serial), inicio, fim, new X500Name(nome), chave);
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(ac));
+        return new JcaX509CertificateConverter().getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(chaveEmissor)));
+    }
+}
@@ -0,0 +1,269 @@
+package br.leg.go.jatai.assinalegis;
+
+import okhttp3.OkHttpClient;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.cms.Attribute;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cms.CMSSignedData;
+import org.bouncycastle.cms.SignerInformation;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+import org.bouncycastle.tsp.TimeStampResponseGenerator;
+import org.bouncycastle.tsp.TimeStampToken;
+import org.bouncycastle.tsp.TimeStampTokenGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes do cliente de carimbo de tempo contra uma TSA local.
+ */
+class TimestampClientTest {
+
+    private static final long ATRASO_TSA_MS = 300;
+
+    private static KeyPair keyPair;
+    private static X509Certificate certificado;
+
+    private LocalTsa tsa;
+    private TimestampClient client;
+
+    @BeforeAll
+    static void criarCertificado() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+
+        X500Name nome = new X500Name("CN=TSA DE TESTE");
+        Date inicio = new Date(System.currentTimeMillis() - 60_000);
+        Date fim = new Date(System.currentTimeMillis() + 86_400_000);
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                nome, BigInteger.ONE, inicio, fim, nome, keyPair.getPublic());
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(false));
+        builder.addExtension(Extension.extendedKeyUsage, true, new ExtendedKeyUsage(KeyPurposeId.id_kp_timeStamping));
+        certificado = new JcaX509CertificateConverter().getCertificate(
+                builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(keyPair.getPrivate())));
+    }
+
+    @BeforeEach
+    void iniciarTsa() throws Exception {
+        tsa = new LocalTsa();
+        client = new TimestampClient(new OkHttpClient(), tsa.url());
+    }
+
+    @AfterEach
+    void pararTsa() throws IOException {
+        tsa.close();
+    }
+
+    @Test
+    void testLoteCustaAproximadamenteUmaIdaEVolta() {
+        int total = 20;
+        long inicio = System.nanoTime();
+        List<CompletableFuture<TimeStampToken>> futures = new ArrayList<>();
+        for (int i = 0; i < total; i++) {
+            futures.add(client.requestTimestamp(("documento " + i).getBytes(StandardCharsets.UTF_8)));
+        }
+
+        Set<BigInteger> nonces = new HashSet<>();
+        for (CompletableFuture<TimeStampToken> future : futures) {
+            nonces.add(future.join().getTimeStampInfo().getNonce());
+        }
+        long duracaoMs = (System.nanoTime() - inicio) / 1_000_000;
+
+        assertEquals(total, nonces.size(), "Cada requisição deve ter um nonce próprio");
+        assertEquals(total, tsa.requisicoes.get());
+        // Em série seriam 20 x 300 ms; com requisições simultâneas fica perto de duas idas e voltas
+        assertTrue(duracaoMs < total * ATRASO_TSA_MS / 2, "Lote demorou " + duracaoMs + " ms");
+        // As conexões abertas são reaproveitadas pelas requisições excedentes
+        assertTrue(tsa.conexoes.get() < total, "Conexões abertas: " + tsa.conexoes.get());
+    }
+
+    @Test
+    void testNonceDivergenteERejeitado() {
+        tsa.alterarNonce = true;
+        CompletableFuture<TimeStampToken> future = client.requestTimestamp(new byte[]{1, 2, 3});
+        CompletionException erro = assertThrows(CompletionException.class, future::join);
+        assertInstanceOf(IOException.class, erro.getCause());
+    }
+
+    @Test
+    void testCarimboIncluidoComoAtributoNaoAssinado() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setKeyEntry("teste", keyPair.getPrivate(), "123456".toCharArray(), new Certificate[]{certificado});
+        SignerContext context = SignerContext.create(keyStore, "teste", "123456".toCharArray());
+
+        byte[] cms = context.signDigest(MessageDigest.getInstance("SHA-256").digest(new byte[]{42}));
+        byte[] carimbado = client.timestampSignature(cms).join();
+
+        SignerInformation signer = new CMSSignedData(carimbado).getSignerInfos().getSigners().iterator().next();
+        Attribute atributo = signer.getUnsignedAttributes().get(PKCSObjectIdentifiers.id_aa_signatureTimeStampToken);
+        assertNotNull(atributo);
+
+        TimeStampToken token = new TimeStampToken(new CMSSignedData(atributo.getAttrValues().getObjectAt(0).toASN1Primitive().getEncoded()));
+        byte[] esperado = MessageDigest.getInstance("SHA-256").digest(signer.getSignature());
+        assertArrayEquals(esperado, token.getTimeStampInfo().getMessageImprintDigest());
+    }
+
+    /**
+     * TSA mínima sobre HTTP/1.1 com keep-alive, que conta conexões e requisições.
+     */
+    private static class LocalTsa implements AutoCloseable {
+        private final ServerSocket server;
+        private final TimeStampResponseGenerator responseGenerator;
+        private final AtomicInteger conexoes = new AtomicInteger();
+        private final AtomicInteger requisicoes = new AtomicInteger();
+        private final AtomicLong serial = new AtomicLong();
+        private volatile boolean alterarNonce;
+
+        LocalTsa() throws Exception {
+            TimeStampTokenGenerator tokenGenerator = new TimeStampTokenGenerator(
+                    new JcaSimpleSignerInfoGeneratorBuilder().build("SHA256withRSA", keyPair.getPrivate(), certificado),
+                    new JcaDigestCalculatorProviderBuilder().build().get(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1)),
+                    new ASN1ObjectIdentifier("1.2.3.4.1"));
+            tokenGenerator.addCertificates(new JcaCertStore(List.of(certificado)));
+            responseGenerator = new TimeStampResponseGenerator(tokenGenerator, TSPAlgorithms.ALLOWED);
+
+            server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread acceptor = new Thread(this::aceitar, "tsa-local");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getLocalPort() + "/tsa";
+        }
+
+        private void aceitar() {
+            while (!server.isClosed()) {
+                try {
+                    Socket socket = server.accept();
+                    conexoes.incrementAndGet();
+                    Thread worker = new Thread(() -> atender(socket), "tsa-local-conexao");
+                    worker.setDaemon(true);
+                    worker.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void atender(Socket socket) {
+            try (socket; InputStream in = new BufferedInputStream(socket.getInputStream());
+                 OutputStream out = socket.getOutputStream()) {
+                while (true) {
+                    int tamanho = lerCabecalhos(in);
+                    if (tamanho < 0) {
+                        return;
+                    }
+                    byte[] corpo = in.readNBytes(tamanho);
+                    requisicoes.incrementAndGet();
+                    Thread.sleep(ATRASO_TSA_MS);
+
+                    byte[] resposta = gerarResposta(new TimeStampRequest(corpo));
+                    out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/timestamp-reply\r\nContent-Length: "
+                            + resposta.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                    out.write(resposta);
+                    out.flush();
+                }
+            } catch (Exception e) {
+                // Conexão encerrada pelo cliente
+            }
+        }
+
+        private byte[] gerarResposta(TimeStampRequest request) throws Exception {
+            if (alterarNonce) {
+                TimeStampRequestGenerator generator = new TimeStampRequestGenerator();
+                generator.setCertReq(true);
+                request = generator.generate(request.getMessageImprintAlgOID(), request.getMessageImprintDigest(),
+                        request.getNonce().add(BigInteger.ONE));
+            }
+            return responseGenerator.generate(request, BigInteger.valueOf(serial.incrementAndGet()), new Date()).getEncoded();
+        }
+
+        /**
+         * Lê os cabeçalhos e devolve o Content-Length, ou -1 se a conexão terminou.
+         */
+        private static int lerCabecalhos(InputStream in) throws IOException {
+            int tamanho = 0;
+            boolean primeira = true;
+            while (true) {
+                String linha = lerLinha(in);
+                if (linha == null) {
+                    return -1;
+                }
+                if (linha.isEmpty()) {
+                    if (primeira) {
+                        continue;
+                    }
+                    return tamanho;
+                }
+                primeira = false;
+                if (linha.toLowerCase().startsWith("content-length:")) {
+                    tamanho = Integer.parseInt(linha.substring(15).trim());
+                }
+            }
+        }
+
+        private static String lerLinha(InputStream in) throws IOException {
+            ByteArrayOutputStream linha = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    return linha.toString(StandardCharsets.US_ASCII).stripTrailing();
+                }
+                linha.write(b);
+            }
+            return linha.size() > 0 ? linha.toString(StandardCharsets.US_ASCII) : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+}
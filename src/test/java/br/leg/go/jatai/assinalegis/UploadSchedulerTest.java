@@ -0,0 +1,51 @@
+package br.leg.go.jatai.assinalegis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes da política de novas tentativas do agendador de envios.
+ */
+class UploadSchedulerTest {
+
+    @Test
+    void testErroDoServidorETransitorio() {
+        assertTrue(UploadScheduler.isTransitoria(new ApiService.ApiException(500, "erro")));
+        assertTrue(UploadScheduler.isTransitoria(new ApiService.ApiException(503, "ocupado")));
+    }
+
+    @Test
+    void testErroDoClienteNaoETransitorio() {
+        assertFalse(UploadScheduler.isTransitoria(new ApiService.ApiException(400, "inválido")));
+        assertFalse(UploadScheduler.isTransitoria(new ApiService.ApiException(401, "não autorizado")));
+        assertFalse(UploadScheduler.isTransitoria(new ApiService.ApiException(404, "não encontrado")));
+    }
+
+    @Test
+    void testTempoEsgotadoETransitorio() {
+        assertTrue(UploadScheduler.isTransitoria(new SocketTimeoutException("timeout")));
+        assertFalse(UploadScheduler.isTransitoria(new ConnectException("recusada")));
+        assertFalse(UploadScheduler.isTransitoria(new IOException("falha")));
+    }
+
+    @Test
+    void testEsperaDentroDosLimites() {
+        for (int i = 0; i < 1000; i++) {
+            // Primeira nova tentativa: até a espera base
+            long primeira = UploadScheduler.calcularEspera(1);
+            assertTrue(primeira >= 0 && primeira <= 500, "espera: " + primeira);
+
+            long terceira = UploadScheduler.calcularEspera(3);
+            assertTrue(terceira >= 0 && terceira <= 2000, "espera: " + terceira);
+
+            // Muitas tentativas não passam do máximo nem estouram o deslocamento
+            long muitas = UploadScheduler.calcularEspera(100);
+            assertTrue(muitas >= 0 && muitas <= 10_000, "espera: " + muitas);
+        }
+    }
+}